@@ -0,0 +1,633 @@
+package workspace;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Saves the games in a binary file that is mapped into memory. The file is a
+ * header holding the global settings, followed by one fixed-width record per
+ * game in row order. The record of a game is found by arithmetic on its row,
+ * loading copies the records straight into a GameModel without parsing
+ * anything, and saving only writes the records that have changed.
+ * 
+ * Changed records are written in place and forced to disk before the header,
+ * which holds the journal sequence number the file is complete up to. Each
+ * record also holds the sequence number of the last change made to it, so
+ * replaying the journal after a crash between the two never applies a change
+ * to a record twice. Rewriting every record, which is needed when rows move,
+ * goes through a temporary file that replaces the old one in one step.
+ * 
+ * A record holds the first 16 rounds of its game. The rest are kept in a
+ * chain of blocks in a second mapped file, which only grows, so a record
+ * always points at blocks that were forced to disk before it.
+ * 
+ * @author Mark Robinson
+ */
+public class GameFile {
+
+	static final int MAGIC = 0x52505342; // "RPSB"
+	static final int VERSION = 2;
+
+	/**
+	 * Header layout: magic, version, record size, game count, bestOf, then the
+	 * six global totals, the journal sequence number and the name of the next
+	 * game, which is 0 in files written before it was kept. The rest is
+	 * reserved.
+	 */
+	static final int HEADER_SIZE = 128;
+
+	/**
+	 * Record layout: name, bestOf, currentRound, playerWins, playerLoses,
+	 * playerTies, started, ended, sequence, winner, round count, the first 16
+	 * rounds and the first block of the rest. The rest is reserved. A deleted
+	 * game keeps its record, with GameModel.DELETED as its winner, until the
+	 * model is compacted and the file rewritten.
+	 */
+	static final int RECORD_SIZE = 80;
+
+	/** Size of the records written by version 1, which had no rounds. */
+	private static final int VERSION_1_RECORD_SIZE = 64;
+
+	/**
+	 * Block layout: the next block of the game, or 0, then 7 words of 16
+	 * rounds. Block 0 holds the magic number and the number of blocks used.
+	 */
+	static final int BLOCK_SIZE = 64;
+	static final int BLOCK_WORDS = 7;
+
+	/** Records the mapping has room for when it is first grown. */
+	private static final int MIN_CAPACITY = 4096;
+
+	private final File file;
+	private final File roundsFile;
+	private FileChannel channel;
+	private MappedByteBuffer map;
+	private FileChannel roundsChannel;
+	private MappedByteBuffer rounds;
+
+	/**
+	 * @param file
+	 *            - The binary file holding the games.
+	 * @param roundsFile
+	 *            - The binary file holding the rounds of long games.
+	 */
+	public GameFile(File file, File roundsFile) {
+		this.file = file;
+		this.roundsFile = roundsFile;
+	}
+
+	public boolean exists() {
+		return file.exists();
+	}
+
+	/**
+	 * @return - True once the file has been loaded or rewritten, so that
+	 *         changed records can be written in place.
+	 */
+	public synchronized boolean isOpen() {
+		return map != null;
+	}
+
+	/**
+	 * @return - The position of a game's record in the file.
+	 */
+	static long offset(int row) {
+		return HEADER_SIZE + (long) row * RECORD_SIZE;
+	}
+
+	/**
+	 * Replaces the contents of a model with the games in the file. A file
+	 * written by an older version is loaded but left closed, so the next save
+	 * rewrites it.
+	 * 
+	 * @param model
+	 *            - The model to fill. It is cleared first.
+	 * @param progress
+	 *            - Told how far loading has got every PROGRESS_GAMES games.
+	 *            May be null.
+	 */
+	public synchronized void load(GameModel model, XMLStore.LoadProgress progress)
+			throws IOException {
+		open(0);
+		int version = map.capacity() < HEADER_SIZE ? 0 : map.getInt(4);
+		int recordSize = version == 1 ? VERSION_1_RECORD_SIZE : RECORD_SIZE;
+		if (map.capacity() < HEADER_SIZE || map.getInt(0) != MAGIC
+				|| version < 1 || version > VERSION
+				|| map.getInt(8) != recordSize) {
+			close();
+			throw new IOException(file + " is not a saved games file");
+		}
+		int count = map.getInt(12);
+		if (count < 0
+				|| HEADER_SIZE + (long) count * recordSize > map.capacity()) {
+			close();
+			throw new IOException(file + " is shorter than its header says");
+		}
+
+		model.clear();
+		model.reserve(count);
+		model.bestOf = map.getInt(16);
+		model.totalUserGamesInitiated = map.getLong(24);
+		model.totalUserGameWins = map.getLong(32);
+		model.totalUserGameLoses = map.getLong(40);
+		model.totalUserRoundWins = map.getLong(48);
+		model.totalUserRoundLoses = map.getLong(56);
+		model.totalUserRoundTies = map.getLong(64);
+		model.journalSequence = map.getLong(72);
+		int nextGameName = map.getInt(80);
+
+		long total = HEADER_SIZE + (long) count * recordSize;
+		for (int row = 0; row < count; row++) {
+			int at = HEADER_SIZE + row * recordSize;
+			model.add(map.getInt(at), map.getLong(at + 24), map.getInt(at + 4));
+			model.setCurrentRound(row, map.getInt(at + 8));
+			model.setPlayerWins(row, map.getInt(at + 12));
+			model.setPlayerLoses(row, map.getInt(at + 16));
+			model.setPlayerTies(row, map.getInt(at + 20));
+			model.setEnded(row, map.getLong(at + 32));
+			model.setSequence(row, map.getLong(at + 40));
+			model.setWinner(row, map.get(at + 48));
+			if (model.getWinner(row) == GameModel.DELETED) {
+				model.delete(row);
+			}
+			if (version >= 2) {
+				model.setRoundCount(row, map.getInt(at + 52));
+				model.setHistoryWord(row, 0, map.getLong(at + 56));
+				model.setHistoryBlock(row, map.getInt(at + 64));
+				if (model.getRoundCount(row) > GameModel.ROUNDS_PER_WORD) {
+					loadRounds(model, row);
+				}
+			}
+
+			if (progress != null && (row + 1) % XMLStore.PROGRESS_GAMES == 0) {
+				progress.update(at + recordSize, total, row + 1, false);
+			}
+		}
+		model.nextGameName = Math.max(model.nextGameName, nextGameName);
+		model.clearChanges();
+		if (version != VERSION) {
+			close();
+		}
+	}
+
+	/**
+	 * Copies the rounds after the first 16 of some games into the mapped
+	 * rounds file, giving them new blocks as needed. Must be called before the
+	 * records of the games are written, as it sets the blocks they point at.
+	 * 
+	 * @param model
+	 *            - The model holding the games.
+	 * @param rows
+	 *            - The rows of the games to write.
+	 * @return - The number of bytes written.
+	 */
+	public synchronized long writeRounds(GameModel model, BitSet rows)
+			throws IOException {
+		long bytes = 0;
+		for (int row = rows.nextSetBit(0); row >= 0 && row < model.size(); row = rows
+				.nextSetBit(row + 1)) {
+			int words = (model.getRoundCount(row) + GameModel.ROUNDS_PER_WORD - 1)
+					/ GameModel.ROUNDS_PER_WORD;
+			int block = model.getHistoryBlock(row);
+			int previous = 0;
+			for (int word = 1; word < words; word += BLOCK_WORDS) {
+				if (block == 0) {
+					block = allocateBlock();
+					if (previous == 0) {
+						model.setHistoryBlock(row, block);
+					} else {
+						rounds.putInt(previous * BLOCK_SIZE, block);
+					}
+				}
+				int at = block * BLOCK_SIZE;
+				for (int index = 0; index < BLOCK_WORDS && word + index < words; index++) {
+					rounds.putLong(at + 8 + index * 8,
+							model.getHistoryWord(row, word + index));
+					bytes += 8;
+				}
+				previous = block;
+				block = rounds.getInt(at);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Copies the records of some games into the mapped file. They are not
+	 * safely on disk until commit() is called.
+	 * 
+	 * @param model
+	 *            - The model holding the games.
+	 * @param rows
+	 *            - The rows of the games to write.
+	 * @return - The number of bytes written.
+	 */
+	public synchronized long writeRecords(GameModel model, BitSet rows)
+			throws IOException {
+		open(offset(model.size()));
+		long bytes = 0;
+		for (int row = rows.nextSetBit(0); row >= 0 && row < model.size(); row = rows
+				.nextSetBit(row + 1)) {
+			putRecord(map, (int) offset(row), model, row);
+			bytes += RECORD_SIZE;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Encodes the settings and game count of a model as a file header.
+	 */
+	public byte[] header(GameModel model) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		putHeader(header, model);
+		return header.array();
+	}
+
+	/**
+	 * Forces the rounds and records written so far to disk, then writes and
+	 * forces the header that makes them part of the saved data.
+	 * 
+	 * @param header
+	 *            - A header made by header() at the same time as the records
+	 *            were written.
+	 * @return - The number of bytes written.
+	 */
+	public synchronized long commit(byte[] header) throws IOException {
+		open(HEADER_SIZE);
+		if (rounds != null) {
+			rounds.force();
+		}
+		map.force();
+		map.position(0);
+		map.put(header);
+		map.force();
+		return header.length;
+	}
+
+	/**
+	 * Writes every game of a model to a temporary file which then replaces the
+	 * file in one step. The rounds of long games must already have been
+	 * written by writeRounds().
+	 * 
+	 * @param snapshot
+	 *            - The model to write. It must not be changed while writing.
+	 * @return - The number of bytes written.
+	 */
+	public synchronized long rewrite(GameModel snapshot) throws IOException {
+		if (rounds != null) {
+			rounds.force();
+		}
+
+		File tmp = new File(file.getPath() + ".tmp");
+		FileChannel out = FileChannel.open(tmp.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			putHeader(buffer, snapshot);
+			for (int row = 0; row < snapshot.size(); row++) {
+				if (buffer.remaining() < RECORD_SIZE) {
+					drain(buffer, out);
+				}
+				putRecord(buffer, buffer.position(), snapshot, row);
+				buffer.position(buffer.position() + RECORD_SIZE);
+			}
+			drain(buffer, out);
+			out.force(false);
+		} finally {
+			out.close();
+		}
+
+		// The file cannot be replaced while it is still mapped on Windows.
+		unmap(map);
+		map = null;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+		XMLStore.replace(tmp, file);
+		open(0);
+		return offset(snapshot.size());
+	}
+
+	/**
+	 * Unmaps the files. They are mapped again by the next load or write.
+	 */
+	public synchronized void close() {
+		unmap(map);
+		unmap(rounds);
+		map = null;
+		rounds = null;
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+			if (roundsChannel != null) {
+				roundsChannel.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		channel = null;
+		roundsChannel = null;
+	}
+
+	/**
+	 * Maps the file if it is not mapped yet, growing it and the mapping if
+	 * they are smaller than the given length.
+	 */
+	private void open(long length) throws IOException {
+		if (channel == null) {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			map = null;
+		}
+		map = grow(channel, map, length, offset(MIN_CAPACITY));
+	}
+
+	/**
+	 * Maps the rounds file if it is not mapped yet, growing it and the mapping
+	 * if they are smaller than the given length.
+	 */
+	private void openRounds(long length) throws IOException {
+		if (roundsChannel == null) {
+			roundsChannel = FileChannel.open(roundsFile.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			rounds = null;
+		}
+		rounds = grow(roundsChannel, rounds, Math.max(length, BLOCK_SIZE),
+				BLOCK_SIZE * 64);
+		if (rounds.getInt(0) != MAGIC) {
+			rounds.putInt(0, MAGIC);
+			rounds.putInt(4, 1);
+		}
+	}
+
+	/**
+	 * Maps a file again when the current mapping is smaller than the given
+	 * length, doubling its size so appending rarely maps again.
+	 */
+	private MappedByteBuffer grow(FileChannel channel, MappedByteBuffer current,
+			long length, long minimum) throws IOException {
+		if (current != null && current.capacity() >= length) {
+			return current;
+		}
+		long size = channel.size();
+		if (size < length) {
+			size = Math.max(length, Math.max(minimum, size * 2));
+		}
+		if (size > Integer.MAX_VALUE) {
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException(file + " cannot hold any more games");
+			}
+			size = Integer.MAX_VALUE;
+		}
+		MappedByteBuffer grown = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				size);
+		unmap(current);
+		return grown;
+	}
+
+	/**
+	 * Releases a mapping now rather than when it is garbage collected, which
+	 * on Windows keeps the file from being replaced long after it was closed.
+	 * Java has no public way to do this, so the JDK's cleaner is called by
+	 * reflection; if that is not possible the mapping is left to the garbage
+	 * collector. The buffer must not be used afterwards.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		try {
+			// Java 9 and later.
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+					ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		} catch (Exception e) {
+			// Fall through to the Java 7 and 8 cleaner.
+		}
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Exception e) {
+			// Left to the garbage collector.
+		}
+	}
+
+	/**
+	 * Reads the rounds after the first 16 of a game from its chain of blocks.
+	 * Rounds past the game's round count are left out, as they were saved
+	 * ahead of its record.
+	 */
+	private void loadRounds(GameModel model, int row) throws IOException {
+		openRounds(0);
+		int count = model.getRoundCount(row);
+		int words = (count + GameModel.ROUNDS_PER_WORD - 1)
+				/ GameModel.ROUNDS_PER_WORD;
+		int block = model.getHistoryBlock(row);
+		int used = rounds.getInt(4);
+		for (int word = 1; word < words; word += BLOCK_WORDS) {
+			if (block <= 0 || block >= used) {
+				throw new IOException(roundsFile + " is missing rounds of game "
+						+ model.getName(row));
+			}
+			int at = block * BLOCK_SIZE;
+			for (int index = 0; index < BLOCK_WORDS && word + index < words; index++) {
+				long packed = rounds.getLong(at + 8 + index * 8);
+				int past = count - (word + index) * GameModel.ROUNDS_PER_WORD;
+				if (past < GameModel.ROUNDS_PER_WORD) {
+					packed &= (1L << past * 4) - 1;
+				}
+				model.setHistoryWord(row, word + index, packed);
+			}
+			block = rounds.getInt(at);
+		}
+	}
+
+	/**
+	 * Takes a new, empty block at the end of the rounds file.
+	 */
+	private int allocateBlock() throws IOException {
+		openRounds(0);
+		int block = rounds.getInt(4);
+		openRounds((block + 1L) * BLOCK_SIZE);
+		rounds.putInt(4, block + 1);
+		int at = block * BLOCK_SIZE;
+		for (int offset = 0; offset < BLOCK_SIZE; offset += 8) {
+			rounds.putLong(at + offset, 0);
+		}
+		return block;
+	}
+
+	private static void drain(ByteBuffer buffer, FileChannel out)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static void putHeader(ByteBuffer header, GameModel model) {
+		header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE)
+				.putInt(model.size()).putInt(model.bestOf).putInt(0)
+				.putLong(model.totalUserGamesInitiated)
+				.putLong(model.totalUserGameWins)
+				.putLong(model.totalUserGameLoses)
+				.putLong(model.totalUserRoundWins)
+				.putLong(model.totalUserRoundLoses)
+				.putLong(model.totalUserRoundTies)
+				.putLong(model.journalSequence).putInt(model.nextGameName);
+		header.position(HEADER_SIZE);
+	}
+
+	private static void putRecord(ByteBuffer out, int at, GameModel model,
+			int row) {
+		out.putInt(at, model.getName(row));
+		out.putInt(at + 4, model.getBestOf(row));
+		out.putInt(at + 8, model.getCurrentRound(row));
+		out.putInt(at + 12, model.getPlayerWins(row));
+		out.putInt(at + 16, model.getPlayerLoses(row));
+		out.putInt(at + 20, model.getPlayerTies(row));
+		out.putLong(at + 24, model.getStarted(row));
+		out.putLong(at + 32, model.getEnded(row));
+		out.putLong(at + 40, model.getSequence(row));
+		out.putInt(at + 48, 0);
+		out.put(at + 48, model.isDeleted(row) ? GameModel.DELETED : model
+				.getWinner(row));
+		out.putInt(at + 52, model.getRoundCount(row));
+		out.putLong(at + 56, model.getHistoryWord(row, 0));
+		out.putInt(at + 64, model.getHistoryBlock(row));
+		out.putInt(at + 68, 0);
+		out.putLong(at + 72, 0);
+	}
+
+	/**
+	 * Reads the rounds of the saved games straight from the files, mapped
+	 * read-only, for tools that scan every round without loading the games
+	 * into a GameModel. The files are never copied onto the heap, so they can
+	 * be larger than it. Any number of threads may scan at once.
+	 */
+	public static class Scanner {
+		private final ByteBuffer map;
+		private final ByteBuffer rounds;
+		private final int recordSize;
+		private final int count;
+
+		/**
+		 * @param file
+		 *            - The binary file holding the games.
+		 * @param roundsFile
+		 *            - The binary file holding the rounds of long games. It
+		 *            need not exist.
+		 */
+		public Scanner(File file, File roundsFile) throws IOException {
+			map = mapReadOnly(file);
+			int version = map.capacity() < HEADER_SIZE ? 0 : map.getInt(4);
+			recordSize = version == 1 ? VERSION_1_RECORD_SIZE : RECORD_SIZE;
+			if (map.capacity() < HEADER_SIZE || map.getInt(0) != MAGIC
+					|| version < 1 || version > VERSION
+					|| map.getInt(8) != recordSize) {
+				throw new IOException(file + " is not a saved games file");
+			}
+			count = map.getInt(12);
+			if (count < 0
+					|| HEADER_SIZE + (long) count * recordSize > map.capacity()) {
+				throw new IOException(file + " is shorter than its header says");
+			}
+			rounds = version >= 2 && roundsFile.exists() ? mapReadOnly(roundsFile)
+					: ByteBuffer.allocate(BLOCK_SIZE);
+		}
+
+		/**
+		 * @return - The number of games saved.
+		 */
+		public int size() {
+			return count;
+		}
+
+		/**
+		 * @return - The journal sequence number the file is complete up to,
+		 *         or of the last change to any of its games if later.
+		 */
+		public long getSequence() {
+			long sequence = map.getLong(72);
+			for (int row = 0; row < count; row++) {
+				sequence = Math.max(sequence,
+						map.getLong(HEADER_SIZE + row * recordSize + 40));
+			}
+			return sequence;
+		}
+
+		/**
+		 * Hands every round of a game to a visitor in the order they were
+		 * played, like GameModel.forEachRound().
+		 * 
+		 * @param row
+		 *            - The game's position in the file.
+		 * @return - The number of rounds visited, which is 0 for a deleted
+		 *         game.
+		 */
+		public int forEachRound(int row, GameModel.RoundVisitor visitor)
+				throws IOException {
+			int at = HEADER_SIZE + row * recordSize;
+			if (recordSize != RECORD_SIZE
+					|| map.get(at + 48) == GameModel.DELETED) {
+				return 0;
+			}
+			int played = map.getInt(at + 52);
+			long packed = map.getLong(at + 56);
+			int block = map.getInt(at + 64);
+			int used = rounds.getInt(4);
+			int word = 0;
+			int index = BLOCK_WORDS;
+			for (int round = 0; round < played; round++) {
+				if (round / GameModel.ROUNDS_PER_WORD != word) {
+					word++;
+					if (index == BLOCK_WORDS) {
+						if (word > 1) {
+							block = rounds.getInt(block * BLOCK_SIZE);
+						}
+						if (block <= 0 || block >= used) {
+							throw new IOException("Rounds of game "
+									+ map.getInt(at) + " are missing");
+						}
+						index = 0;
+					}
+					packed = rounds.getLong(block * BLOCK_SIZE + 8 + index++ * 8);
+				}
+				visitor.round(round, (int) (packed >>> 2) & 3, (int) packed & 3);
+				packed >>>= 4;
+			}
+			return played;
+		}
+
+		private static ByteBuffer mapReadOnly(File file) throws IOException {
+			FileChannel channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.READ);
+			try {
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+						Math.min(channel.size(), Integer.MAX_VALUE));
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
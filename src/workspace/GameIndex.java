@@ -0,0 +1,254 @@
+package workspace;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Secondary indexes over the rows of a GameModel: a bitmap of the rows of
+ * each winner and of each bestOf, and the rows sorted by start and by end
+ * time. GameModel keeps them up to date as games change and are deleted;
+ * compacting the rows makes the model drop its index, which is then built
+ * again for the next query.
+ * 
+ * @author Mark Robinson
+ */
+final class GameIndex {
+
+	/** Rows of live games by winner code, up to GameModel.DELETED. */
+	private final BitSet[] byWinner = { new BitSet(), new BitSet(),
+			new BitSet(), new BitSet() };
+
+	/** Rows of live games by bestOf. */
+	private final Map<Integer, BitSet> byBestOf = new HashMap<Integer, BitSet>();
+
+	final Times started = new Times();
+	final Times ended = new Times();
+
+	/**
+	 * Rows sorted by a time. Games are mostly started and ended in time order,
+	 * so an entry added after the index is built is nearly always appended.
+	 */
+	static final class Times {
+		private long[] times = new long[16];
+		private int[] rows = new int[16];
+		private int size = 0;
+
+		/**
+		 * Adds an entry at the end, out of order. sort() must be called after
+		 * the last one.
+		 */
+		void append(long time, int row) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			times[size] = time;
+			rows[size] = row;
+			size++;
+		}
+
+		/**
+		 * Sorts the entries appended by time, and rows with the same time by
+		 * row. When the span of the times fits beside the row in a long, as it
+		 * does for years of games, one primitive sort of the packed pairs does
+		 * it. Otherwise each time is replaced by its rank among the times,
+		 * which fits in 32 bits beside the row, and a second sort is needed.
+		 */
+		void sort() {
+			if (size == 0) {
+				return;
+			}
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			int maxRow = 0;
+			for (int at = 0; at < size; at++) {
+				min = Math.min(min, times[at]);
+				max = Math.max(max, times[at]);
+				maxRow = Math.max(maxRow, rows[at]);
+			}
+			int rowBits = 32 - Integer.numberOfLeadingZeros(maxRow);
+			long span = max - min;
+			if (span >= 0 && span >>> (63 - rowBits) == 0) {
+				long[] keys = new long[size];
+				for (int at = 0; at < size; at++) {
+					keys[at] = (times[at] - min) << rowBits | rows[at];
+				}
+				Arrays.sort(keys);
+				long mask = (1L << rowBits) - 1;
+				for (int at = 0; at < size; at++) {
+					times[at] = min + (keys[at] >>> rowBits);
+					rows[at] = (int) (keys[at] & mask);
+				}
+				return;
+			}
+
+			long[] sorted = Arrays.copyOf(times, size);
+			Arrays.sort(sorted);
+			long[] keys = new long[size];
+			for (int at = 0; at < size; at++) {
+				long rank = Arrays.binarySearch(sorted, times[at]);
+				keys[at] = rank << 32 | rows[at];
+			}
+			Arrays.sort(keys);
+			for (int at = 0; at < size; at++) {
+				times[at] = sorted[(int) (keys[at] >>> 32)];
+				rows[at] = (int) keys[at];
+			}
+		}
+
+		void add(long time, int row) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			int at = size;
+			if (size > 0 && time < times[size - 1]) {
+				at = first(time + 1);
+				System.arraycopy(times, at, times, at + 1, size - at);
+				System.arraycopy(rows, at, rows, at + 1, size - at);
+			}
+			times[at] = time;
+			rows[at] = row;
+			size++;
+		}
+
+		void remove(long time, int row) {
+			for (int at = first(time); at < size && times[at] == time; at++) {
+				if (rows[at] == row) {
+					System.arraycopy(times, at + 1, times, at, size - at - 1);
+					System.arraycopy(rows, at + 1, rows, at, size - at - 1);
+					size--;
+					return;
+				}
+			}
+		}
+
+		/**
+		 * @return - The rows with a time in [from, to).
+		 */
+		BitSet rows(long from, long to) {
+			BitSet found = new BitSet();
+			for (int at = first(from); at < size && times[at] < to; at++) {
+				found.set(rows[at]);
+			}
+			return found;
+		}
+
+		/**
+		 * @return - The first entry with a time of at least time.
+		 */
+		private int first(long time) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (times[middle] < time) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * Adds a row while the index is built, in any order of time. sort() must
+	 * be called after the last one.
+	 */
+	void load(int row, byte winner, int bestOf, long startedAt, long endedAt) {
+		byWinner[winner].set(row);
+		bestOfRows(bestOf).set(row);
+		started.append(startedAt, row);
+		if (endedAt != 0) {
+			ended.append(endedAt, row);
+		}
+	}
+
+	/**
+	 * Sorts the times of the rows loaded, once they all are.
+	 */
+	void sort() {
+		started.sort();
+		ended.sort();
+	}
+
+	void add(int row, byte winner, int bestOf, long startedAt, long endedAt) {
+		byWinner[winner].set(row);
+		bestOfRows(bestOf).set(row);
+		started.add(startedAt, row);
+		if (endedAt != 0) {
+			ended.add(endedAt, row);
+		}
+	}
+
+	void setWinner(int row, byte from, byte to) {
+		byWinner[from].clear(row);
+		byWinner[to].set(row);
+	}
+
+	void setBestOf(int row, int from, int to) {
+		bestOfRows(from).clear(row);
+		bestOfRows(to).set(row);
+	}
+
+	/**
+	 * Drops a deleted row from the bitmaps. Its times are left, as every
+	 * query also matches a bitmap.
+	 */
+	void delete(int row, byte winner, int bestOf) {
+		byWinner[winner].clear(row);
+		bestOfRows(bestOf).clear(row);
+	}
+
+	void setEnded(int row, long from, long to) {
+		if (from != 0) {
+			ended.remove(from, row);
+		}
+		if (to != 0) {
+			ended.add(to, row);
+		}
+	}
+
+	/**
+	 * @param winners
+	 *            - Bit 1 << winner code for each winner wanted.
+	 * @return - The live rows with one of the winners.
+	 */
+	BitSet winners(int winners) {
+		BitSet found = new BitSet();
+		for (int code = 0; code < byWinner.length; code++) {
+			if ((winners & 1 << code) != 0) {
+				found.or(byWinner[code]);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return - The live rows of every game.
+	 */
+	BitSet all() {
+		return winners(1 << GameModel.PENDING | 1 << GameModel.PLAYER
+				| 1 << GameModel.CPU);
+	}
+
+	/**
+	 * @return - The live rows played to a number of rounds.
+	 */
+	BitSet bestOf(int rounds) {
+		BitSet rows = byBestOf.get(rounds);
+		return rows == null ? new BitSet() : rows;
+	}
+
+	private BitSet bestOfRows(int rounds) {
+		BitSet rows = byBestOf.get(rounds);
+		if (rows == null) {
+			rows = new BitSet();
+			byBestOf.put(rounds, rows);
+		}
+		return rows;
+	}
+}
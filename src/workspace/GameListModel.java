@@ -0,0 +1,180 @@
+package workspace;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * Lists the games in the store for a JList, a page at a time. Opening the
+ * list only counts the games; a page is read and formatted by the game
+ * service the first time one of its rows is shown, and only the most recently
+ * shown pages are kept, so the list costs the same with a hundred games or a
+ * million. Used on the event dispatch thread only.
+ * 
+ * @author Mark Robinson
+ */
+public class GameListModel extends AbstractListModel<String> {
+	private static final long serialVersionUID = 4135296011878409620L;
+
+	/** Games read at a time. */
+	static final int PAGE_SIZE = 128;
+
+	/** Pages kept once read. */
+	static final int MAX_PAGES = 64;
+
+	/** Shown in a row until its page has been read. */
+	static final String LOADING = "Loading...";
+
+	private final GameService service;
+	private final boolean pendingOnly;
+
+	private int size = 0;
+
+	/** Counts refresh() calls, so pages read for an older list are dropped. */
+	private int generation = 0;
+
+	/** The layout of the rows the pages were read from, or -1 before any. */
+	private int layout = -1;
+
+	private final Map<Integer, XMLStore.GamePage> pages = new LinkedHashMap<Integer, XMLStore.GamePage>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(
+				Map.Entry<Integer, XMLStore.GamePage> eldest) {
+			return size() > MAX_PAGES;
+		}
+	};
+
+	private final Set<Integer> loading = new HashSet<Integer>();
+
+	/** The model row each page read so far starts looking from. */
+	private final TreeMap<Integer, Integer> pageRows = new TreeMap<Integer, Integer>();
+
+	/**
+	 * @param service
+	 *            - Reads the games.
+	 * @param pendingOnly
+	 *            - Whether only games pending completion are listed.
+	 */
+	public GameListModel(GameService service, boolean pendingOnly) {
+		this.service = service;
+		this.pendingOnly = pendingOnly;
+	}
+
+	/**
+	 * Drops every page read and counts the games again.
+	 */
+	public void refresh() {
+		final int current = ++generation;
+		pages.clear();
+		loading.clear();
+		pageRows.clear();
+		pageRows.put(0, 0);
+		layout = -1;
+		service.countGames(pendingOnly, new GameService.Callback<Integer>() {
+			public void done(Integer count) {
+				if (count == null || current != generation) {
+					return;
+				}
+				int old = size;
+				size = 0;
+				if (old > 0) {
+					fireIntervalRemoved(GameListModel.this, 0, old - 1);
+				}
+				size = count;
+				if (size > 0) {
+					fireIntervalAdded(GameListModel.this, 0, size - 1);
+				}
+			}
+		});
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return - The game as shown, or LOADING while its page is read.
+	 */
+	public String getElementAt(int index) {
+		XMLStore.GamePage page = pages.get(index / PAGE_SIZE);
+		if (page == null) {
+			load(index / PAGE_SIZE);
+			return LOADING;
+		}
+		int offset = index % PAGE_SIZE;
+		return offset < page.rows.length ? page.rows[offset] : LOADING;
+	}
+
+	/**
+	 * @return - The name of the game at an index, or -1 if its page has not
+	 *         been read.
+	 */
+	public int getGameName(int index) {
+		XMLStore.GamePage page = index < 0 ? null : pages.get(index
+				/ PAGE_SIZE);
+		int offset = index % PAGE_SIZE;
+		return page == null || offset >= page.names.length ? -1
+				: page.names[offset];
+	}
+
+	/**
+	 * @return - The names of the games in a range of indexes, or null if any
+	 *         of their pages has not been read.
+	 */
+	public int[] getGameNames(int from, int to) {
+		int[] names = new int[to - from + 1];
+		for (int index = from; index <= to; index++) {
+			names[index - from] = getGameName(index);
+			if (names[index - from] < 0) {
+				return null;
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Asks the game service for a page, starting from the closest page before
+	 * it whose start is known.
+	 */
+	private void load(final int number) {
+		if (!loading.add(number)) {
+			return;
+		}
+		final int current = generation;
+		Map.Entry<Integer, Integer> known = pageRows.floorEntry(number);
+		service.readGames(pendingOnly, known.getValue(),
+				(number - known.getKey()) * PAGE_SIZE, PAGE_SIZE,
+				new GameService.Callback<XMLStore.GamePage>() {
+					public void done(XMLStore.GamePage page) {
+						if (current != generation) {
+							return;
+						}
+						loading.remove(number);
+						if (page == null) {
+							return;
+						}
+						if (layout >= 0 && page.layout != layout) {
+							// Deleted games were compacted since the list was
+							// read, so the rows remembered are out of date.
+							refresh();
+							return;
+						}
+						layout = page.layout;
+						pages.put(number, page);
+						pageRows.put(number + 1, page.nextRow);
+						int first = number * PAGE_SIZE;
+						if (page.rows.length > 0 && first < size) {
+							fireContentsChanged(GameListModel.this, first,
+									Math.min(size - 1, first + page.rows.length
+											- 1));
+						}
+					}
+				});
+	}
+}
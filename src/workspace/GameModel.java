@@ -0,0 +1,799 @@
+package workspace;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Holds the global settings and every saved game in memory. Each game field
+ * is kept in its own primitive array indexed by row, so a game costs a few
+ * dozen bytes and updating a counter never allocates. Rows are kept in the
+ * order the games were created.
+ * 
+ * @author Mark Robinson
+ */
+public class GameModel {
+
+	/** Winner codes, matching XMLStore.determineGameWinner(). */
+	static final byte PENDING = 0;
+	static final byte PLAYER = 1;
+	static final byte CPU = 2;
+
+	/** Winner code saved in the record of a deleted game. */
+	static final byte DELETED = 3;
+
+	/** Rounds packed into each history word, at 4 bits a round. */
+	static final int ROUNDS_PER_WORD = 16;
+
+	/**
+	 * Receives the rounds of a game from forEachRound().
+	 */
+	public interface RoundVisitor {
+		/**
+		 * @param round
+		 *            - Index of the round in the game, counting from 0.
+		 * @param playerThrow
+		 *            - The Throw code of the player, or 0 if not known.
+		 * @param cpuThrow
+		 *            - The Throw code of the CPU, or 0 if not known.
+		 */
+		void round(int round, int playerThrow, int cpuThrow);
+	}
+
+	/**
+	 * The totals of every game played, as they were when it was made.
+	 */
+	public static final class Statistics {
+		public final long gamesStarted;
+		public final long gamesWon;
+		public final long gamesLost;
+		public final long roundsWon;
+		public final long roundsTied;
+		public final long roundsLost;
+
+		Statistics(GameModel model) {
+			gamesStarted = model.totalUserGamesInitiated;
+			gamesWon = model.totalUserGameWins;
+			gamesLost = model.totalUserGameLoses;
+			roundsWon = model.totalUserRoundWins;
+			roundsTied = model.totalUserRoundTies;
+			roundsLost = model.totalUserRoundLoses;
+		}
+
+		public long getGamesPending() {
+			return gamesStarted - (gamesWon + gamesLost);
+		}
+
+		public long getRoundsStarted() {
+			return roundsWon + roundsTied + roundsLost;
+		}
+	}
+
+	/** Number of rounds played in new games. */
+	int bestOf = 3;
+
+	long totalUserGamesInitiated = 0;
+	long totalUserGameWins = 0;
+	long totalUserGameLoses = 0;
+	long totalUserRoundWins = 0;
+	long totalUserRoundLoses = 0;
+	long totalUserRoundTies = 0;
+
+	/** Sequence number of the last journal record folded into the model. */
+	long journalSequence = 0;
+
+	/**
+	 * The name given to the next game, unless a freed name is reused. Only
+	 * grows, so a name is never given twice unless it is freed.
+	 */
+	int nextGameName = 1;
+
+	/** Names below nextGameName freed for reuse by freeName(). */
+	private BitSet freeNames = new BitSet();
+	private int freeCount = 0;
+
+	private int size = 0;
+
+	/** Number of games with a PENDING winner. */
+	private int pending = 0;
+
+	private int[] name = new int[16];
+	private int[] gameBestOf = new int[16];
+	private int[] currentRound = new int[16];
+	private int[] playerWins = new int[16];
+	private int[] playerLoses = new int[16];
+	private int[] playerTies = new int[16];
+	private long[] started = new long[16];
+	private long[] ended = new long[16];
+	private byte[] winner = new byte[16];
+	private long[] sequence = new long[16];
+
+	/**
+	 * The throws of every round played, 4 bits a round with the player's throw
+	 * in the high 2 bits. The first 16 rounds of a game are kept in history;
+	 * longer games keep the rest in moreHistory, which is null otherwise.
+	 */
+	private int[] roundCount = new int[16];
+	private long[] history = new long[16];
+	private long[][] moreHistory = new long[16][];
+
+	/**
+	 * Where a GameFile keeps the rounds after the first 16, or 0.
+	 */
+	private int[] historyBlock = new int[16];
+
+	/**
+	 * Rows of deleted games. A deleted game keeps its row, so no other game
+	 * moves, until compact() removes every deleted row at once.
+	 */
+	private BitSet deleted = new BitSet();
+	private int deletedCount = 0;
+
+	/** Built by getIndex() for the first query, then kept up to date. */
+	private GameIndex index = null;
+
+	/** Counts the times rows have moved, so rows read before can be checked. */
+	private int layout = 0;
+
+	/**
+	 * Rows changed since the last call to clearChanges(), and whether any row
+	 * has moved since then.
+	 */
+	private BitSet changed = new BitSet();
+	private boolean moved = false;
+
+	/**
+	 * Open addressing table from game name to row. Each slot holds row + 1,
+	 * or 0 when empty; the key is read back from the name array.
+	 */
+	private int[] slots = new int[32];
+
+	/**
+	 * @return - The number of rows held, counting the rows of deleted games
+	 *         until they are compacted.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return - The number of games held, not counting deleted games.
+	 */
+	public int count() {
+		return size - deletedCount;
+	}
+
+	/**
+	 * @return - The number of rows of deleted games left to compact.
+	 */
+	public int deletedCount() {
+		return deletedCount;
+	}
+
+	/**
+	 * @return - True if the game in a row has been deleted.
+	 */
+	public boolean isDeleted(int row) {
+		return deleted.get(row);
+	}
+
+	/**
+	 * @return - The secondary indexes of the live games, built the first time
+	 *         they are asked for.
+	 */
+	GameIndex getIndex() {
+		if (index == null) {
+			index = new GameIndex();
+			for (int row = 0; row < size; row++) {
+				if (!deleted.get(row)) {
+					index.load(row, winner[row], gameBestOf[row], started[row],
+							ended[row]);
+				}
+			}
+			index.sort();
+		}
+		return index;
+	}
+
+	/**
+	 * @return - A number that changes whenever rows move.
+	 */
+	public int getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return - The number of games pending completion.
+	 */
+	public int pendingCount() {
+		return pending;
+	}
+
+	/**
+	 * Adds a new pending game after every other game.
+	 * 
+	 * @param gameName
+	 *            - Unique number naming the game.
+	 * @param startedAt
+	 *            - Start time in milliseconds since the epoch.
+	 * @param rounds
+	 *            - Number of rounds to play before determining a winner.
+	 * @return - The row of the new game.
+	 */
+	public int add(int gameName, long startedAt, int rounds) {
+		if (size == name.length) {
+			grow();
+		}
+		int row = size++;
+		name[row] = gameName;
+		if (gameName >= nextGameName) {
+			nextGameName = gameName + 1;
+		} else if (gameName > 0 && freeNames.get(gameName)) {
+			freeNames.clear(gameName);
+			freeCount--;
+		}
+		gameBestOf[row] = rounds;
+		currentRound[row] = 1;
+		playerWins[row] = 0;
+		playerLoses[row] = 0;
+		playerTies[row] = 0;
+		started[row] = startedAt;
+		ended[row] = 0;
+		winner[row] = PENDING;
+		pending++;
+		sequence[row] = 0;
+		roundCount[row] = 0;
+		history[row] = 0;
+		moreHistory[row] = null;
+		historyBlock[row] = 0;
+		deleted.clear(row);
+		changed.set(row);
+		insert(row);
+		if (index != null) {
+			index.add(row, PENDING, rounds, startedAt, 0);
+		}
+		return row;
+	}
+
+	/**
+	 * Deletes a game in constant time. Its row is kept, so no other game
+	 * moves, and find() no longer finds it.
+	 * 
+	 * @param row
+	 *            - The row of the game to delete.
+	 */
+	public void delete(int row) {
+		if (deleted.get(row)) {
+			return;
+		}
+		if (winner[row] == PENDING) {
+			pending--;
+		}
+		if (index != null) {
+			index.delete(row, winner[row], gameBestOf[row]);
+		}
+		deleted.set(row);
+		deletedCount++;
+		changed.set(row);
+	}
+
+	/**
+	 * Removes the rows of every deleted game in one pass, moving the games
+	 * after them up.
+	 */
+	public void compact() {
+		if (deletedCount == 0) {
+			return;
+		}
+		BitSet changedAfter = new BitSet();
+		int live = 0;
+		for (int row = 0; row < size; row++) {
+			if (deleted.get(row)) {
+				continue;
+			}
+			if (row != live) {
+				moveRow(row, live);
+			}
+			if (changed.get(row)) {
+				changedAfter.set(live);
+			}
+			live++;
+		}
+		Arrays.fill(moreHistory, live, size, null);
+		size = live;
+		deleted.clear();
+		deletedCount = 0;
+		changed = changedAfter;
+		moved = true;
+		layout++;
+		index = null;
+		reindex();
+	}
+
+	/**
+	 * Chooses the name of the next game in constant time. The name is taken
+	 * when a game is added with it.
+	 * 
+	 * @param reuse
+	 *            - Whether the lowest freed name is given before a new one.
+	 * @return - A name no game has.
+	 */
+	public int newName(boolean reuse) {
+		if (reuse && freeCount > 0) {
+			return freeNames.nextSetBit(1);
+		}
+		return nextGameName;
+	}
+
+	/**
+	 * Lets newName() give a name again once no game has it.
+	 * 
+	 * @param gameName
+	 *            - A name below nextGameName that no game has.
+	 */
+	public void freeName(int gameName) {
+		if (gameName > 0 && gameName < nextGameName && !freeNames.get(gameName)) {
+			freeNames.set(gameName);
+			freeCount++;
+		}
+	}
+
+	/**
+	 * Frees every name below nextGameName that no game has, after the games
+	 * have been loaded.
+	 */
+	public void collectFreeNames() {
+		freeNames.clear();
+		freeNames.set(1, Math.max(1, nextGameName));
+		for (int row = 0; row < size; row++) {
+			if (name[row] > 0) {
+				freeNames.clear(name[row]);
+			}
+		}
+		freeCount = freeNames.cardinality();
+	}
+
+	/**
+	 * Finds the row of a game by its name.
+	 * 
+	 * @param gameName
+	 *            - Unique number naming the game.
+	 * @return - The row of the game, or -1 if there is no such game.
+	 */
+	public int find(int gameName) {
+		// Games are normally named after their row, counting from 1.
+		if (gameName > 0 && gameName <= size && name[gameName - 1] == gameName
+				&& !deleted.get(gameName - 1)) {
+			return gameName - 1;
+		}
+		int mask = slots.length - 1;
+		for (int slot = hash(gameName) & mask; slots[slot] != 0; slot = (slot + 1)
+				& mask) {
+			int row = slots[slot] - 1;
+			if (name[row] == gameName && !deleted.get(row)) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Rebuilds the name to row table. Must be called after names are changed
+	 * with setName().
+	 */
+	public void reindex() {
+		int capacity = 32;
+		while (capacity < size * 2) {
+			capacity <<= 1;
+		}
+		if (slots.length == capacity) {
+			Arrays.fill(slots, 0);
+		} else {
+			slots = new int[capacity];
+		}
+		for (int row = 0; row < size; row++) {
+			insert(row);
+		}
+	}
+
+	public int getName(int row) {
+		return name[row];
+	}
+
+	public int getBestOf(int row) {
+		return gameBestOf[row];
+	}
+
+	public int getCurrentRound(int row) {
+		return currentRound[row];
+	}
+
+	public int getPlayerWins(int row) {
+		return playerWins[row];
+	}
+
+	public int getPlayerLoses(int row) {
+		return playerLoses[row];
+	}
+
+	public int getPlayerTies(int row) {
+		return playerTies[row];
+	}
+
+	/**
+	 * @return - Start time in milliseconds since the epoch.
+	 */
+	public long getStarted(int row) {
+		return started[row];
+	}
+
+	/**
+	 * @return - End time in milliseconds since the epoch, or 0 if pending.
+	 */
+	public long getEnded(int row) {
+		return ended[row];
+	}
+
+	/**
+	 * @return - PENDING, PLAYER or CPU.
+	 */
+	public byte getWinner(int row) {
+		return winner[row];
+	}
+
+	/**
+	 * @return - Sequence number of the last journal record applied to the
+	 *         game, or 0 if not known.
+	 */
+	public long getSequence(int row) {
+		return sequence[row];
+	}
+
+	/**
+	 * @return - The number of rounds recorded for a game.
+	 */
+	public int getRoundCount(int row) {
+		return roundCount[row];
+	}
+
+	/**
+	 * @return - The throws of a round packed in 4 bits, the player's throw in
+	 *         the high 2 bits.
+	 */
+	public int getRound(int row, int round) {
+		long word = getHistoryWord(row, round / ROUNDS_PER_WORD);
+		return (int) (word >>> (round % ROUNDS_PER_WORD * 4)) & 0xF;
+	}
+
+	/**
+	 * Hands every round of a game to a visitor in the order they were played,
+	 * without creating an object per round.
+	 */
+	public void forEachRound(int row, RoundVisitor visitor) {
+		int count = roundCount[row];
+		for (int word = 0; word * ROUNDS_PER_WORD < count; word++) {
+			long packed = getHistoryWord(row, word);
+			int end = Math.min(count, (word + 1) * ROUNDS_PER_WORD);
+			for (int round = word * ROUNDS_PER_WORD; round < end; round++) {
+				visitor.round(round, (int) (packed >>> 2) & 3, (int) packed & 3);
+				packed >>>= 4;
+			}
+		}
+	}
+
+	/**
+	 * @return - 16 rounds of a game, packed by 4 bits with the first round in
+	 *         the lowest bits.
+	 */
+	long getHistoryWord(int row, int word) {
+		if (word == 0) {
+			return history[row];
+		}
+		long[] more = moreHistory[row];
+		return more == null || word > more.length ? 0 : more[word - 1];
+	}
+
+	/**
+	 * @return - The first GameFile block holding a game's rounds after the
+	 *         first 16, or 0 if it has none yet.
+	 */
+	int getHistoryBlock(int row) {
+		return historyBlock[row];
+	}
+
+	/**
+	 * @return - The rows changed since the last call to clearChanges().
+	 */
+	public BitSet getChanges() {
+		return changed;
+	}
+
+	/**
+	 * @return - True if rows have been compacted, moving later games, since the
+	 *         last call to clearChanges().
+	 */
+	public boolean hasMoved() {
+		return moved;
+	}
+
+	/**
+	 * Forgets which rows have changed, once they have been saved.
+	 */
+	public void clearChanges() {
+		changed.clear();
+		moved = false;
+	}
+
+	/**
+	 * Makes room for a number of games, so that adding them does not grow the
+	 * columns or the name table again.
+	 */
+	public void reserve(int games) {
+		while (name.length < games) {
+			grow();
+		}
+		if (slots.length < games * 2) {
+			int capacity = slots.length;
+			while (capacity < games * 2) {
+				capacity <<= 1;
+			}
+			slots = new int[capacity];
+			for (int row = 0; row < size; row++) {
+				insert(row);
+			}
+		}
+	}
+
+	/**
+	 * Renames a game. reindex() must be called before the next find().
+	 */
+	public void setName(int row, int gameName) {
+		name[row] = gameName;
+		changed.set(row);
+	}
+
+	public void setBestOf(int row, int rounds) {
+		if (index != null && !deleted.get(row)) {
+			index.setBestOf(row, gameBestOf[row], rounds);
+		}
+		gameBestOf[row] = rounds;
+		changed.set(row);
+	}
+
+	public void setCurrentRound(int row, int round) {
+		currentRound[row] = round;
+		changed.set(row);
+	}
+
+	public void setPlayerWins(int row, int wins) {
+		playerWins[row] = wins;
+		changed.set(row);
+	}
+
+	public void setPlayerLoses(int row, int loses) {
+		playerLoses[row] = loses;
+		changed.set(row);
+	}
+
+	public void setPlayerTies(int row, int ties) {
+		playerTies[row] = ties;
+		changed.set(row);
+	}
+
+	public void setStarted(int row, long time) {
+		index = null;
+		started[row] = time;
+		changed.set(row);
+	}
+
+	public void setEnded(int row, long time) {
+		if (index != null && !deleted.get(row)) {
+			index.setEnded(row, ended[row], time);
+		}
+		ended[row] = time;
+		changed.set(row);
+	}
+
+	public void setWinner(int row, byte code) {
+		if (winner[row] == PENDING) {
+			pending--;
+		}
+		if (code == PENDING) {
+			pending++;
+		}
+		if (index != null && !deleted.get(row)) {
+			index.setWinner(row, winner[row], code);
+		}
+		winner[row] = code;
+		changed.set(row);
+	}
+
+	public void setSequence(int row, long seq) {
+		sequence[row] = seq;
+		changed.set(row);
+	}
+
+	/**
+	 * Adds a round to the end of a game's history.
+	 * 
+	 * @param playerThrow
+	 *            - The throw code of the player.
+	 * @param cpuThrow
+	 *            - The throw code of the CPU.
+	 */
+	public void addRound(int row, int playerThrow, int cpuThrow) {
+		int round = roundCount[row];
+		int word = round / ROUNDS_PER_WORD;
+		int shift = round % ROUNDS_PER_WORD * 4;
+		long packed = getHistoryWord(row, word) & ~(0xFL << shift)
+				| (long) ((playerThrow & 3) << 2 | cpuThrow & 3) << shift;
+		setHistoryWord(row, word, packed);
+		roundCount[row] = round + 1;
+		changed.set(row);
+	}
+
+	/**
+	 * Sets the number of rounds recorded for a game, for loading saved data.
+	 */
+	void setRoundCount(int row, int count) {
+		roundCount[row] = count;
+		changed.set(row);
+	}
+
+	/**
+	 * Sets 16 rounds of a game's history, for loading saved data.
+	 */
+	void setHistoryWord(int row, int word, long packed) {
+		if (word == 0) {
+			history[row] = packed;
+		} else {
+			long[] more = moreHistory[row];
+			if (more == null || more.length < word) {
+				more = Arrays.copyOf(more == null ? new long[0] : more,
+						Math.max(word, more == null ? 1 : more.length * 2));
+				moreHistory[row] = more;
+			}
+			more[word - 1] = packed;
+		}
+		changed.set(row);
+	}
+
+	/**
+	 * Sets the first GameFile block holding a game's rounds after the first
+	 * 16. Does not count as a change to the game.
+	 */
+	void setHistoryBlock(int row, int block) {
+		historyBlock[row] = block;
+	}
+
+	/**
+	 * @return - The totals of every game played so far.
+	 */
+	public Statistics getStatistics() {
+		return new Statistics(this);
+	}
+
+	/**
+	 * Makes a copy of the settings and every game that is not changed by later
+	 * changes to this model.
+	 * 
+	 * @return - A snapshot of this model.
+	 */
+	public GameModel copy() {
+		GameModel copy = new GameModel();
+		copy.bestOf = bestOf;
+		copy.totalUserGamesInitiated = totalUserGamesInitiated;
+		copy.totalUserGameWins = totalUserGameWins;
+		copy.totalUserGameLoses = totalUserGameLoses;
+		copy.totalUserRoundWins = totalUserRoundWins;
+		copy.totalUserRoundLoses = totalUserRoundLoses;
+		copy.totalUserRoundTies = totalUserRoundTies;
+		copy.journalSequence = journalSequence;
+		copy.nextGameName = nextGameName;
+		copy.deleted = (BitSet) deleted.clone();
+		copy.deletedCount = deletedCount;
+		copy.layout = layout;
+		copy.size = size;
+		copy.pending = pending;
+		copy.name = Arrays.copyOf(name, name.length);
+		copy.gameBestOf = Arrays.copyOf(gameBestOf, name.length);
+		copy.currentRound = Arrays.copyOf(currentRound, name.length);
+		copy.playerWins = Arrays.copyOf(playerWins, name.length);
+		copy.playerLoses = Arrays.copyOf(playerLoses, name.length);
+		copy.playerTies = Arrays.copyOf(playerTies, name.length);
+		copy.started = Arrays.copyOf(started, name.length);
+		copy.ended = Arrays.copyOf(ended, name.length);
+		copy.winner = Arrays.copyOf(winner, name.length);
+		copy.sequence = Arrays.copyOf(sequence, name.length);
+		copy.roundCount = Arrays.copyOf(roundCount, name.length);
+		copy.history = Arrays.copyOf(history, name.length);
+		copy.moreHistory = new long[name.length][];
+		for (int row = 0; row < size; row++) {
+			if (moreHistory[row] != null) {
+				copy.moreHistory[row] = moreHistory[row].clone();
+			}
+		}
+		copy.historyBlock = Arrays.copyOf(historyBlock, name.length);
+		copy.slots = Arrays.copyOf(slots, slots.length);
+		return copy;
+	}
+
+	/**
+	 * Removes every game and resets the settings to their defaults.
+	 */
+	public void clear() {
+		bestOf = 3;
+		totalUserGamesInitiated = 0;
+		totalUserGameWins = 0;
+		totalUserGameLoses = 0;
+		totalUserRoundWins = 0;
+		totalUserRoundLoses = 0;
+		totalUserRoundTies = 0;
+		journalSequence = 0;
+		nextGameName = 1;
+		freeNames.clear();
+		freeCount = 0;
+		Arrays.fill(moreHistory, 0, size, null);
+		size = 0;
+		pending = 0;
+		deleted.clear();
+		deletedCount = 0;
+		layout++;
+		index = null;
+		changed.clear();
+		moved = true;
+		reindex();
+	}
+
+	private void insert(int row) {
+		if (size * 2 > slots.length) {
+			reindex();
+			return;
+		}
+		int mask = slots.length - 1;
+		int slot = hash(name[row]) & mask;
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = row + 1;
+	}
+
+	private void moveRow(int from, int to) {
+		name[to] = name[from];
+		gameBestOf[to] = gameBestOf[from];
+		currentRound[to] = currentRound[from];
+		playerWins[to] = playerWins[from];
+		playerLoses[to] = playerLoses[from];
+		playerTies[to] = playerTies[from];
+		started[to] = started[from];
+		ended[to] = ended[from];
+		winner[to] = winner[from];
+		sequence[to] = sequence[from];
+		roundCount[to] = roundCount[from];
+		history[to] = history[from];
+		moreHistory[to] = moreHistory[from];
+		historyBlock[to] = historyBlock[from];
+	}
+
+	private void grow() {
+		int capacity = name.length * 2;
+		name = Arrays.copyOf(name, capacity);
+		gameBestOf = Arrays.copyOf(gameBestOf, capacity);
+		currentRound = Arrays.copyOf(currentRound, capacity);
+		playerWins = Arrays.copyOf(playerWins, capacity);
+		playerLoses = Arrays.copyOf(playerLoses, capacity);
+		playerTies = Arrays.copyOf(playerTies, capacity);
+		started = Arrays.copyOf(started, capacity);
+		ended = Arrays.copyOf(ended, capacity);
+		winner = Arrays.copyOf(winner, capacity);
+		sequence = Arrays.copyOf(sequence, capacity);
+		roundCount = Arrays.copyOf(roundCount, capacity);
+		history = Arrays.copyOf(history, capacity);
+		moreHistory = Arrays.copyOf(moreHistory, capacity);
+		historyBlock = Arrays.copyOf(historyBlock, capacity);
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
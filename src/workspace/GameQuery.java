@@ -0,0 +1,119 @@
+package workspace;
+
+/**
+ * Describes which games XMLStore.query() finds and in what order. Each filter
+ * left unset matches every game. Ex: the ten longest games the player won,
+ * started in the last day:
+ * 
+ * new GameQuery().winner(GameModel.PLAYER).startedBetween(now - 86400000,
+ * now).sortBy(GameQuery.DURATION, true).limit(10)
+ * 
+ * @author Mark Robinson
+ */
+public class GameQuery {
+
+	/** Orders: as created, by ended - started, by round wins - losses. */
+	public static final int CREATED = 0;
+	public static final int DURATION = 1;
+	public static final int MARGIN = 2;
+
+	/** Bit 1 << winner code for each winner matched, or 0 for any. */
+	int winners = 0;
+	int bestOf = 0;
+	boolean byStarted = false;
+	long startedFrom;
+	long startedTo;
+	boolean byEnded = false;
+	long endedFrom;
+	long endedTo;
+	int order = CREATED;
+	boolean descending = false;
+	int limit = Integer.MAX_VALUE;
+
+	/**
+	 * Matches games with a winner, adding to any winners already matched.
+	 * 
+	 * @param code
+	 *            - GameModel.PENDING, PLAYER or CPU.
+	 */
+	public GameQuery winner(byte code) {
+		winners |= 1 << code;
+		return this;
+	}
+
+	/**
+	 * Matches games still being played.
+	 */
+	public GameQuery pending() {
+		return winner(GameModel.PENDING);
+	}
+
+	/**
+	 * Matches games that have ended, whoever won.
+	 */
+	public GameQuery ended() {
+		return winner(GameModel.PLAYER).winner(GameModel.CPU);
+	}
+
+	/**
+	 * Matches games played to a number of rounds, counting tie breakers.
+	 */
+	public GameQuery bestOf(int rounds) {
+		bestOf = rounds;
+		return this;
+	}
+
+	/**
+	 * Matches games started in a time range.
+	 * 
+	 * @param from
+	 *            - Milliseconds since the epoch, inclusive.
+	 * @param to
+	 *            - Milliseconds since the epoch, exclusive.
+	 */
+	public GameQuery startedBetween(long from, long to) {
+		byStarted = true;
+		startedFrom = from;
+		startedTo = to;
+		return this;
+	}
+
+	/**
+	 * Matches games ended in a time range, so never a pending game.
+	 * 
+	 * @param from
+	 *            - Milliseconds since the epoch, inclusive.
+	 * @param to
+	 *            - Milliseconds since the epoch, exclusive.
+	 */
+	public GameQuery endedBetween(long from, long to) {
+		byEnded = true;
+		endedFrom = from;
+		endedTo = to;
+		return this;
+	}
+
+	/**
+	 * Orders the games found. Games that sort the same stay in created order.
+	 * Pending games have no duration and come after every ended game when
+	 * ordered by DURATION, ascending or descending.
+	 * 
+	 * @param order
+	 *            - CREATED, DURATION or MARGIN.
+	 * @param descending
+	 *            - Whether the largest comes first.
+	 */
+	public GameQuery sortBy(int order, boolean descending) {
+		this.order = order;
+		this.descending = descending;
+		return this;
+	}
+
+	/**
+	 * Keeps only the first games found, after ordering them.
+	 */
+	public GameQuery limit(int games) {
+		limit = games;
+		return this;
+	}
+}
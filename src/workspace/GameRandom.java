@@ -0,0 +1,103 @@
+package workspace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small, fast random number generator (xoshiro256**) that can be seeded,
+ * so a run of games can be played again exactly. It is not thread safe; give
+ * each thread its own generator, made with split() or got from current().
+ * 
+ * The generators given by current() are seeded from the session seed, which
+ * is taken from "rps.seed" when it is set so a session can be played again
+ * exactly.
+ * 
+ * @author Mark Robinson
+ */
+public final class GameRandom {
+
+	/** Seed of the generators given by current(). */
+	public static final long SESSION_SEED = Long.getLong("rps.seed",
+			System.nanoTime() ^ System.currentTimeMillis() << 20);
+
+	/** Number of threads given a generator so far. */
+	private static final AtomicInteger threads = new AtomicInteger();
+
+	private static final ThreadLocal<GameRandom> CURRENT = new ThreadLocal<GameRandom>() {
+		protected GameRandom initialValue() {
+			return new GameRandom(SESSION_SEED + threads.getAndIncrement()
+					* 0xC2B2AE3D27D4EB4FL);
+		}
+	};
+
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	/**
+	 * @param seed
+	 *            - Any number. Generators made with the same seed return the
+	 *            same numbers.
+	 */
+	public GameRandom(long seed) {
+		// Spread the seed over the state with SplitMix64, as the state must
+		// not be all zero.
+		s0 = mix(seed += 0x9E3779B97F4A7C15L);
+		s1 = mix(seed += 0x9E3779B97F4A7C15L);
+		s2 = mix(seed += 0x9E3779B97F4A7C15L);
+		s3 = mix(seed + 0x9E3779B97F4A7C15L);
+	}
+
+	/**
+	 * @return - The next 64 random bits.
+	 */
+	public long nextLong() {
+		long result = Long.rotateLeft(s1 * 5, 7) * 9;
+		long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+
+	/**
+	 * @param bound
+	 *            - One more than the largest number wanted. Must be positive.
+	 * @return - A number between 0 and bound - 1.
+	 */
+	public int nextInt(int bound) {
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * @return - A Throw code between 1 and 3, each equally likely.
+	 */
+	public int nextThrow() {
+		return nextInt(3) + 1;
+	}
+
+	/**
+	 * Makes a new generator seeded from this one, for use by another thread.
+	 */
+	public GameRandom split() {
+		return new GameRandom(nextLong());
+	}
+
+	/**
+	 * @return - The calling thread's own generator. The first thread to ask
+	 *         gets a generator seeded with SESSION_SEED, so a session played
+	 *         on one thread repeats when the seed is given again.
+	 */
+	public static GameRandom current() {
+		return CURRENT.get();
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,401 @@
+package workspace;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs every change to the saved games, and every read of them for the
+ * screens, on a thread of its own, one request at a time, so the event
+ * dispatch thread never waits on the store however many games are saved. The
+ * result of each request is handed back to the event dispatch thread, and the
+ * time from a request to its result being shown is measured.
+ * 
+ * @author Mark Robinson
+ */
+public class GameService {
+
+	/**
+	 * Receives the result of a request on the event dispatch thread.
+	 */
+	public interface Callback<T> {
+		/**
+		 * @param result
+		 *            - The result of the request, or null if it failed.
+		 */
+		void done(T result);
+	}
+
+	/**
+	 * The outcome of a round, for the winner screen.
+	 */
+	public static class Round {
+		public final Throw player;
+		public final Throw cpu;
+		public final String explanation;
+		public final boolean tieBreaker;
+		/** RoundResolver.GAME_PLAYER or GAME_CPU, or -1 if the game goes on. */
+		public final int gameWinner;
+		public final int wins;
+		public final int loses;
+
+		Round(Throw player, Throw cpu, String explanation, boolean tieBreaker,
+				int gameWinner, int wins, int loses) {
+			this.player = player;
+			this.cpu = cpu;
+			this.explanation = explanation;
+			this.tieBreaker = tieBreaker;
+			this.gameWinner = gameWinner;
+			this.wins = wins;
+			this.loses = loses;
+		}
+	}
+
+	/**
+	 * The state of the active game, for the status bar.
+	 */
+	public static class Status {
+		public final boolean ended;
+		public final int currentRound;
+		public final int bestOf;
+		public final String score;
+
+		Status(boolean ended, int currentRound, int bestOf, String score) {
+			this.ended = ended;
+			this.currentRound = currentRound;
+			this.bestOf = bestOf;
+			this.score = score;
+		}
+	}
+
+	private final XMLStore store;
+	private final boolean adaptive = "adaptive".equals(System
+			.getProperty("rps.cpu"));
+	private final ExecutorService writer = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "Game service");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private long requests = 0;
+	private long failedRequests = 0;
+	private long lastLatencyNanos = 0;
+	private long totalLatencyNanos = 0;
+	private long maxLatencyNanos = 0;
+
+	/**
+	 * @param store
+	 *            - The store holding the games.
+	 */
+	public GameService(XMLStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Runs a request on the service thread, after every request made before
+	 * it, and hands its result to a callback on the event dispatch thread.
+	 * 
+	 * @param request
+	 *            - Reads or changes the store. It must not touch Swing.
+	 * @param callback
+	 *            - Shows the result. May be null.
+	 */
+	public <T> void submit(final Callable<T> request, final Callback<T> callback) {
+		final long submitted = System.nanoTime();
+		writer.execute(new Runnable() {
+			public void run() {
+				T result = null;
+				boolean failed = false;
+				try {
+					result = request.call();
+				} catch (Exception e) {
+					failed = true;
+					e.printStackTrace();
+				}
+				final T done = result;
+				final boolean doneFailed = failed;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (callback != null) {
+							callback.done(done);
+						}
+						record(System.nanoTime() - submitted, doneFailed);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Chooses the CPU's throw at random, or, when "rps.cpu" is "adaptive",
+	 * whatever beats the player's predicted throw.
+	 * 
+	 * @param random
+	 *            - The generator to choose with.
+	 * @return - The Throw code of the CPU's throw.
+	 */
+	public int cpuChoose(GameRandom random) {
+		if (adaptive) {
+			return store.chooseCpuThrow(random);
+		}
+		return random.nextThrow();
+	}
+
+	/**
+	 * Plays a round of the active game: chooses the CPU's throw, records the
+	 * round, and adds a tie breaker round or finds the winner of the game if
+	 * it was its last round.
+	 * 
+	 * @param player
+	 *            - The throw of the player.
+	 */
+	public void playRound(final Throw player, Callback<Round> callback) {
+		submit(new Callable<Round>() {
+			public Round call() {
+				Throw cpu = Throw.fromCode(cpuChoose(GameRandom.current()));
+				store.recordRound(player, cpu);
+
+				GameModel games = store.model;
+				int game = store.getActiveGame();
+				boolean tieBreaker = false;
+				int gameWinner = -1;
+				if (RoundResolver.needsTieBreaker(games.getCurrentRound(game),
+						games.getBestOf(game), games.getPlayerWins(game),
+						games.getPlayerLoses(game))) {
+					tieBreaker = true;
+					store.extendActiveGame();
+				} else if (games.getCurrentRound(game) == games.getBestOf(game)) {
+					gameWinner = store.determineGameWinner();
+				}
+				return new Round(player, cpu, RoundResolver.explain(player,
+						cpu), tieBreaker, gameWinner, games.getPlayerWins(game),
+						games.getPlayerLoses(game));
+			}
+		}, callback);
+	}
+
+	/**
+	 * Moves the active game on to its next round, or ends it after its last.
+	 * The callback gets null if the game was past its last round.
+	 */
+	public void nextRound(Callback<Status> callback) {
+		submit(new Callable<Status>() {
+			public Status call() {
+				GameModel games = store.model;
+				int game = store.getActiveGame();
+				if (games.getCurrentRound(game) < games.getBestOf(game)) {
+					store.advanceRound();
+					return status(false);
+				} else if (games.getCurrentRound(game) == games.getBestOf(game)) {
+					store.endActiveGame();
+					return status(true);
+				}
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Starts a new game and makes it the active game.
+	 * 
+	 * @param rounds
+	 *            - The number of rounds to play, as typed by the player. Left
+	 *            unchanged if it is not a number.
+	 */
+	public void startGame(final String rounds, Callback<Status> callback) {
+		submit(new Callable<Status>() {
+			public Status call() {
+				if (!rounds.isEmpty()) {
+					try {
+						store.setBestOf(Integer.parseInt(rounds.trim()));
+					} catch (NumberFormatException nfe) {
+					}
+				}
+				int bestOf = store.model.bestOf;
+				store.makeNewGame();
+				return new Status(false, 1, bestOf, store.getScoreDisplay());
+			}
+		}, callback);
+	}
+
+	/**
+	 * Makes a saved game the active game.
+	 * 
+	 * @param gameName
+	 *            - Unique number of the game.
+	 */
+	public void continueGame(final int gameName, Callback<Status> callback) {
+		submit(new Callable<Status>() {
+			public Status call() {
+				if (store.model.find(gameName) < 0) {
+					return null;
+				}
+				Link.activeGame = String.valueOf(gameName);
+				return status(false);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Deletes games in one pass. Every other game keeps its name. The rows of
+	 * deleted games are compacted afterwards, once they are enough to be worth
+	 * it.
+	 * 
+	 * @param gameNames
+	 *            - Unique numbers of the games.
+	 * @param callback
+	 *            - Gets the number of games deleted.
+	 */
+	public void deleteGames(final int[] gameNames, Callback<Integer> callback) {
+		submit(new Callable<Integer>() {
+			public Integer call() {
+				return store.deleteGames(gameNames);
+			}
+		}, callback);
+		compact();
+	}
+
+	/**
+	 * Deletes a range of games in a list in one pass. Every other game keeps
+	 * its name. The rows of deleted games are compacted afterwards, once they
+	 * are enough to be worth it.
+	 * 
+	 * @param pendingOnly
+	 *            - Whether the list only holds games pending completion.
+	 * @param from
+	 *            - Index of the first game to delete in the list.
+	 * @param to
+	 *            - Index of the last game to delete in the list.
+	 * @param callback
+	 *            - Gets the number of games deleted.
+	 */
+	public void deleteGames(final boolean pendingOnly, final int from,
+			final int to, Callback<Integer> callback) {
+		submit(new Callable<Integer>() {
+			public Integer call() {
+				return store.deleteGames(store.readGames(pendingOnly, 0, from,
+						to - from + 1).names);
+			}
+		}, callback);
+		compact();
+	}
+
+	/**
+	 * Removes the rows of deleted games after every request made so far, if
+	 * they are enough to be worth it. See XMLStore.compact().
+	 */
+	public void compact() {
+		submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return store.compact();
+			}
+		}, null);
+	}
+
+	/**
+	 * Counts the games in a list. See XMLStore.countGames().
+	 */
+	public void countGames(final boolean pendingOnly, Callback<Integer> callback) {
+		submit(new Callable<Integer>() {
+			public Integer call() {
+				return store.countGames(pendingOnly);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Reads a page of a list of games. See XMLStore.readGames().
+	 */
+	public void readGames(final boolean pendingOnly, final int row,
+			final int skip, final int count, Callback<XMLStore.GamePage> callback) {
+		submit(new Callable<XMLStore.GamePage>() {
+			public XMLStore.GamePage call() {
+				return store.readGames(pendingOnly, row, skip, count);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Reads the totals of every game played. See XMLStore.getStatistics().
+	 */
+	public void statistics(Callback<GameModel.Statistics> callback) {
+		submit(new Callable<GameModel.Statistics>() {
+			public GameModel.Statistics call() {
+				return store.getStatistics();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Reads the statistics of one game. See XMLStore.getGameStatistics().
+	 */
+	public void gameStatistics(final int gameName, Callback<String> callback) {
+		submit(new Callable<String>() {
+			public String call() {
+				return store.getGameStatistics(gameName);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Finds the names of games. See XMLStore.query().
+	 */
+	public void query(final GameQuery query, Callback<int[]> callback) {
+		submit(new Callable<int[]>() {
+			public int[] call() {
+				return store.query(query);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Waits for every request made so far to finish, then stops the service.
+	 */
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Makes a short report of the requests handled so far.
+	 * 
+	 * @return Ex: "42 requests (0 failed), last 0.80 ms, average 1.10 ms, max
+	 *         4.02 ms"
+	 */
+	public synchronized String getReport() {
+		return String.format(
+				"%d requests (%d failed), last %.2f ms, average %.2f ms, "
+						+ "max %.2f ms", requests, failedRequests,
+				lastLatencyNanos / 1e6, requests == 0 ? 0.0
+						: totalLatencyNanos / 1e6 / requests,
+				maxLatencyNanos / 1e6);
+	}
+
+	private synchronized void record(long latency, boolean failed) {
+		requests++;
+		if (failed) {
+			failedRequests++;
+		}
+		lastLatencyNanos = latency;
+		totalLatencyNanos += latency;
+		maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+	}
+
+	private Status status(boolean ended) {
+		GameModel games = store.model;
+		int game = store.getActiveGame();
+		return new Status(ended, games.getCurrentRound(game),
+				games.getBestOf(game), store.getScoreDisplay());
+	}
+}
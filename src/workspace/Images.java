@@ -0,0 +1,107 @@
+package workspace;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * Decodes every image in "imgs/" once and hands out shared icons. preload()
+ * decodes them all at the same time on background threads when the game
+ * starts, so the window and every round only wait for an image that has not
+ * finished decoding yet, and never read or decode one themselves.
+ * 
+ * @author Mark Robinson
+ */
+public final class Images {
+
+	/** The images preload() decodes: "imgs/" + name + ".png". */
+	public static final String[] NAMES = { "bg", "mouse", "fight", "rock",
+			"paper", "scissor" };
+
+	private static final Map<String, Future<ImageIcon>> icons = new LinkedHashMap<String, Future<ImageIcon>>();
+
+	private Images() {
+	}
+
+	/**
+	 * Starts decoding every image in NAMES, one thread each up to the number
+	 * of processors. Does nothing after the first call.
+	 */
+	public static synchronized void preload() {
+		if (!icons.isEmpty()) {
+			return;
+		}
+		ExecutorService decoders = Executors.newFixedThreadPool(
+				Math.min(NAMES.length, Runtime.getRuntime()
+						.availableProcessors()), new ThreadFactory() {
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "Image decoder");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		for (final String name : NAMES) {
+			icons.put(name, decoders.submit(new Callable<ImageIcon>() {
+				public ImageIcon call() throws IOException {
+					return new ImageIcon(ImageIO.read(new File("imgs/" + name
+							+ ".png")));
+				}
+			}));
+		}
+		// The threads end once the images are decoded.
+		decoders.shutdown();
+	}
+
+	/**
+	 * @param name
+	 *            - One of NAMES. Ex: "rock"
+	 * @return - The shared icon of the image, waiting for it to be decoded if
+	 *         it has not been yet.
+	 * @throws IOException
+	 *             - If the image could not be read.
+	 */
+	public static ImageIcon icon(String name) throws IOException {
+		Future<ImageIcon> icon;
+		synchronized (Images.class) {
+			preload();
+			icon = icons.get(name);
+		}
+		if (icon == null) {
+			throw new IOException("imgs/" + name + ".png is not preloaded");
+		}
+		try {
+			return icon.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted loading imgs/" + name + ".png");
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e
+					.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return - The shared icon of a throw's image.
+	 */
+	public static ImageIcon icon(Throw type) throws IOException {
+		return icon(type.toString());
+	}
+
+	/**
+	 * @return - The decoded image, shared with its icon. Do not draw on it.
+	 */
+	public static BufferedImage image(String name) throws IOException {
+		return (BufferedImage) icon(name).getImage();
+	}
+}
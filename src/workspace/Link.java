@@ -1,11 +1,6 @@
 package workspace;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
-
-import org.w3c.dom.Document;
+import java.io.File;
 
 /**
  * Links my game to my XMLStore class and several other static variables.
@@ -16,27 +11,46 @@ public class Link {
 
 	static XMLStore localDataStore = new XMLStore();
 	static String activeGame = "0";
-	static Document doc;
-	static Date time = Calendar.getInstance().getTime();
 
-	static Timer timer = new Timer();
+	/**
+	 * Whether reports for tuning the game, such as the CPU seed and startup
+	 * times, are printed. Set with -Drps.debug=true.
+	 */
+	static final boolean debug = Boolean.getBoolean("rps.debug");
 
+	/**
+	 * Starts the game. "-export file" writes every saved game to an xml file
+	 * and "-import file" replaces them with the games in one, then exits.
+	 */
 	public static void main(String[] args) {
-
-		localDataStore.Do("create");
-		TimerTask dataSave = new TimerTask() {
-			public void run() {
-				time = Calendar.getInstance().getTime();
-				localDataStore.Do("save");
+		Startup.mark("main");
+
+		if (args.length == 2
+				&& (args[0].equals("-export") || args[0].equals("-import"))) {
+			localDataStore.create(null);
+			try {
+				if (args[0].equals("-export")) {
+					localDataStore.exportTo(new File(args[1]));
+				} else {
+					localDataStore.importFrom(new File(args[1]));
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
 			}
-		};
+			localDataStore.writeBehind.close();
+			System.exit(0);
+		}
 
-		timer.scheduleAtFixedRate(dataSave, 0, 1000);
+		// Printed so a session can be played again with -Drps.seed=...
+		if (debug) {
+			System.out.println("CPU seed: " + GameRandom.SESSION_SEED);
+		}
 
-		new Thread() {
-			public void run() {
-				new RPSGame();
-			}
-		}.start();
+		// Decode the images while the window is built and the games load.
+		Images.preload();
+
+		// Show the start menu while the saved games are loading.
+		RPSGame game = new RPSGame();
+		localDataStore.create(game);
 	}
 }
\ No newline at end of file
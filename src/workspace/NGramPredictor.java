@@ -0,0 +1,305 @@
+package workspace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Predicts the opponent's next throw from the rounds before it, and throws
+ * whatever beats it. For every order from 0 to ORDER it counts how often each
+ * throw followed each run of that many rounds. All the counts are kept in one
+ * flat array, so recording a round touches ORDER + 1 counters and the memory
+ * used does not grow with the number of rounds seen. A context's counts are
+ * halved once it has seen LIMIT rounds, so old habits fade.
+ * 
+ * It also keeps how often each order's guess was right, and stops trusting an
+ * order whose guesses are no better than chance. The saved form is a fixed
+ * layout of big-endian ints, so a saved predictor can be mapped and read in
+ * one copy.
+ * 
+ * @author Mark Robinson
+ */
+public class NGramPredictor implements Strategy {
+
+	/** Longest run of rounds used to predict a throw. */
+	static final int ORDER = 4;
+
+	/** Rounds a context sees before its counts are halved. */
+	static final int LIMIT = 1 << 12;
+
+	/** Guesses an order makes before its accuracy is trusted. */
+	static final int MIN_GUESSES = 64;
+
+	/** Ints per context: the total, then a count for each Throw code. */
+	private static final int STRIDE = 4;
+
+	private static final int MAGIC = 0x5250534D; // "RPSM"
+	private static final int VERSION = 2;
+
+	/** Number of contexts of each order: 9 to the power of the order. */
+	private static final int[] CONTEXTS = new int[ORDER + 1];
+
+	/** Index in counts of the first context of each order. */
+	private static final int[] OFFSETS = new int[ORDER + 2];
+
+	static {
+		CONTEXTS[0] = 1;
+		for (int order = 1; order <= ORDER; order++) {
+			CONTEXTS[order] = CONTEXTS[order - 1] * 9;
+		}
+		for (int order = 0; order <= ORDER; order++) {
+			OFFSETS[order + 1] = OFFSETS[order] + CONTEXTS[order] * STRIDE;
+		}
+	}
+
+	private final int[] counts = new int[OFFSETS[ORDER + 1]];
+
+	/** Guesses made and guesses right by each order, in pairs. */
+	private final int[] accuracy = new int[(ORDER + 1) * 2];
+
+	/** The last ORDER rounds in base 9, the latest in the lowest digit. */
+	private int context = 0;
+
+	/** Journal sequence of the last round recorded. */
+	private long sequence = 0;
+
+	public String getName() {
+		return "adaptive";
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		Arrays.fill(accuracy, 0);
+		context = 0;
+		sequence = 0;
+	}
+
+	/**
+	 * @return - The Throw code the opponent is most likely to throw next, or 0
+	 *         if no throw is more likely than the others.
+	 */
+	public int predict() {
+		int predicted = 0;
+		double confidence = 1.0 / 3;
+		for (int order = ORDER; order >= 0; order--) {
+			int at = OFFSETS[order] + context % CONTEXTS[order] * STRIDE;
+			int total = counts[at];
+			int guesses = accuracy[order * 2];
+			if (total == 0
+					|| (guesses >= MIN_GUESSES && accuracy[order * 2 + 1] * 3L <= guesses)) {
+				continue;
+			}
+			int most = mostLikely(at);
+			// Seen once and seen often are told apart by adding one of each.
+			double share = (counts[at + most] + 1.0) / (total + 3.0);
+			if (share > confidence) {
+				confidence = share;
+				predicted = most;
+			}
+		}
+		return predicted;
+	}
+
+	public int next(GameRandom random) {
+		int predicted = predict();
+		return predicted == 0 ? random.nextThrow() : Strategies
+				.beats(predicted);
+	}
+
+	/**
+	 * Learns from a round. A round without a known throw for either side is
+	 * ignored, as it has no context to add.
+	 * 
+	 * @param own
+	 *            - The Throw code of this side, 1 to 3.
+	 * @param opponent
+	 *            - The Throw code of the opponent, 1 to 3.
+	 */
+	public void observe(int own, int opponent) {
+		if (own < 1 || own > 3 || opponent < 1 || opponent > 3) {
+			return;
+		}
+		for (int order = 0; order <= ORDER; order++) {
+			int at = OFFSETS[order] + context % CONTEXTS[order] * STRIDE;
+			if (counts[at] > 0) {
+				if (++accuracy[order * 2] == Integer.MAX_VALUE) {
+					accuracy[order * 2] >>= 1;
+					accuracy[order * 2 + 1] >>= 1;
+				}
+				if (mostLikely(at) == opponent) {
+					accuracy[order * 2 + 1]++;
+				}
+			}
+			counts[at + opponent]++;
+			if (++counts[at] >= LIMIT) {
+				halve(at);
+			}
+		}
+		context = (context * 9 + (opponent - 1) * 3 + own - 1)
+				% CONTEXTS[ORDER];
+	}
+
+	/**
+	 * Adds the counts of a predictor that learned from other rounds to this
+	 * one's. The context of this predictor is kept.
+	 */
+	public void merge(NGramPredictor other) {
+		for (int at = 0; at < counts.length; at += STRIDE) {
+			counts[at] += other.counts[at];
+			counts[at + 1] += other.counts[at + 1];
+			counts[at + 2] += other.counts[at + 2];
+			counts[at + 3] += other.counts[at + 3];
+			while (counts[at] >= LIMIT) {
+				halve(at);
+			}
+		}
+		for (int order = 0; order <= ORDER; order++) {
+			long guesses = (long) accuracy[order * 2] + other.accuracy[order * 2];
+			long right = (long) accuracy[order * 2 + 1]
+					+ other.accuracy[order * 2 + 1];
+			while (guesses >= Integer.MAX_VALUE) {
+				guesses >>= 1;
+				right >>= 1;
+			}
+			accuracy[order * 2] = (int) guesses;
+			accuracy[order * 2 + 1] = (int) right;
+		}
+		sequence = Math.max(sequence, other.sequence);
+	}
+
+	/**
+	 * @return - The share of an order's guesses that were right, or 0 if it
+	 *         has made none.
+	 */
+	public double getAccuracy(int order) {
+		int guesses = accuracy[order * 2];
+		return guesses == 0 ? 0 : (double) accuracy[order * 2 + 1] / guesses;
+	}
+
+	/**
+	 * @return - The Throw code seen most often in the context at an index of
+	 *         counts, the lowest one if several were.
+	 */
+	private int mostLikely(int at) {
+		int most = 1;
+		for (int code = 2; code <= 3; code++) {
+			if (counts[at + code] > counts[at + most]) {
+				most = code;
+			}
+		}
+		return most;
+	}
+
+	/**
+	 * Halves the counts of the context at an index of counts.
+	 */
+	private void halve(int at) {
+		counts[at + 1] >>= 1;
+		counts[at + 2] >>= 1;
+		counts[at + 3] >>= 1;
+		counts[at] = counts[at + 1] + counts[at + 2] + counts[at + 3];
+	}
+
+	/**
+	 * @return - The journal sequence of the last round recorded.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @param sequence
+	 *            - The journal sequence of the last round recorded.
+	 */
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @return - A copy that can be saved while this one keeps changing.
+	 */
+	public NGramPredictor copy() {
+		NGramPredictor copy = new NGramPredictor();
+		System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+		System.arraycopy(accuracy, 0, copy.accuracy, 0, accuracy.length);
+		copy.context = context;
+		copy.sequence = sequence;
+		return copy;
+	}
+
+	/**
+	 * @return - The number of bytes write() writes.
+	 */
+	public static int size() {
+		return 24 + (OFFSETS[ORDER + 1] + (ORDER + 1) * 2) * 4;
+	}
+
+	/**
+	 * Writes the predictor, to be read back by read(). Layout: magic, version,
+	 * ORDER, context and sequence, then the counts and the accuracy of each
+	 * order.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(ORDER);
+		out.writeInt(context);
+		out.writeLong(sequence);
+		for (int count : counts) {
+			out.writeInt(count);
+		}
+		for (int count : accuracy) {
+			out.writeInt(count);
+		}
+	}
+
+	/**
+	 * Writes the predictor to a file through a temporary file that then
+	 * replaces it in one step.
+	 */
+	public void save(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			DataOutputStream data = new DataOutputStream(
+					new BufferedOutputStream(out, 64 * 1024));
+			write(data);
+			data.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		XMLStore.replace(tmp, file);
+	}
+
+	/**
+	 * Reads a predictor written by write(), such as the contents of a model
+	 * file.
+	 * 
+	 * @param in
+	 *            - Holds the predictor from its position on, big-endian.
+	 * @return - The predictor read, or null if it was written by another
+	 *         version or for a different ORDER, or is not a predictor at all.
+	 */
+	public static NGramPredictor read(ByteBuffer in) {
+		if (in.remaining() < size() || in.getInt() != MAGIC
+				|| in.getInt() != VERSION || in.getInt() != ORDER) {
+			return null;
+		}
+		NGramPredictor predictor = new NGramPredictor();
+		predictor.context = in.getInt();
+		predictor.sequence = in.getLong();
+		IntBuffer ints = in.asIntBuffer();
+		ints.get(predictor.counts);
+		ints.get(predictor.accuracy);
+		if (predictor.context < 0 || predictor.context >= CONTEXTS[ORDER]) {
+			return null;
+		}
+		return predictor;
+	}
+}
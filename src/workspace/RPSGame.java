@@ -2,26 +2,31 @@ package workspace;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.ComponentOrientation;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.GridLayout;
 import java.awt.Image;
 import java.awt.LayoutManager;
 import java.awt.Point;
+import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.awt.Transparency;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.io.File;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
-import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.DefaultListCellRenderer;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -33,20 +38,30 @@ import javax.swing.JSeparator;
 import javax.swing.JTextArea;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
-import org.w3c.dom.Element;
-
 /**
- * Creates a custom JPanel with a painted background image.
+ * Creates a custom JPanel with a painted background image. The image is
+ * scaled once to the size of the panel into an image compatible with the
+ * screen, which can be kept in video memory, and is scaled again only when the
+ * panel's size or screen changes; every other repaint only copies it.
  * 
  * @author Mark Robinson
  */
 class BackgroundPanel extends JPanel {
 	private static final long serialVersionUID = 7360623640101506948L;
 	private Image image;
+	private BufferedImage scaled;
+	private GraphicsConfiguration scaledFor;
+
+	private long paints = 0;
+	private long scales = 0;
+	private long lastPaintNanos = 0;
+	private long totalPaintNanos = 0;
+	private long totalScaleNanos = 0;
 
 	/**
 	 * Prepares for the image to be drawn to the JPanel.
@@ -70,7 +85,64 @@ class BackgroundPanel extends JPanel {
 		if (image == null) {
 			return;
 		}
-		g.drawImage(image, 0, 0, getSize().width, getSize().height, null);
+		long start = System.nanoTime();
+		int width = getWidth();
+		int height = getHeight();
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		GraphicsConfiguration screen = getGraphicsConfiguration();
+		if (scaled == null || scaled.getWidth() != width
+				|| scaled.getHeight() != height || screen != scaledFor) {
+			scale(screen, width, height);
+			totalScaleNanos += System.nanoTime() - start;
+		}
+		g.drawImage(scaled, 0, 0, null);
+
+		lastPaintNanos = System.nanoTime() - start;
+		totalPaintNanos += lastPaintNanos;
+		if (paints++ == 0) {
+			Startup.mark("first frame");
+		}
+	}
+
+	/**
+	 * Draws the image scaled to a size into a new image compatible with a
+	 * screen.
+	 */
+	private void scale(GraphicsConfiguration screen, int width, int height) {
+		if (scaled != null) {
+			scaled.flush();
+		}
+		int transparency = image instanceof Transparency ? ((Transparency) image)
+				.getTransparency() : Transparency.TRANSLUCENT;
+		scaled = screen == null ? new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB) : screen.createCompatibleImage(
+				width, height, transparency);
+		scaledFor = screen;
+		Graphics2D g = scaled.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		scales++;
+	}
+
+	/**
+	 * Makes a short report of the repaints done so far.
+	 * 
+	 * @return Ex: "120 paints (2 scaled, average 8.10 ms), last 0.05 ms,
+	 *         average 0.19 ms"
+	 */
+	public String getPaintReport() {
+		return String.format("%d paints (%d scaled, average %.2f ms), "
+				+ "last %.2f ms, average %.2f ms", paints, scales,
+				scales == 0 ? 0.0 : totalScaleNanos / 1e6 / scales,
+				lastPaintNanos / 1e6, paints == 0 ? 0.0 : totalPaintNanos
+						/ 1e6 / paints);
 	}
 }
 
@@ -80,13 +152,15 @@ class BackgroundPanel extends JPanel {
  * 
  * @author Mark Robinson
  */
-public class RPSGame extends JFrame {
+public class RPSGame extends JFrame implements XMLStore.LoadProgress {
 	private static final long serialVersionUID = -5795852986231833192L;
 	private Toolkit toolkit = Toolkit.getDefaultToolkit();
 	private Dimension screenSize = toolkit.getScreenSize();
-	private String userSelected = "";
-	private String cpuSelected = "";
-	private JPanel content = null;
+	private Throw userSelected = null;
+	private Throw cpuSelected = null;
+	private final GameService service = new GameService(Link.localDataStore);
+	private boolean roundPending = false;
+	private BackgroundPanel content = null;
 
 	private JPanel gameTopStatus = new JPanel(new BorderLayout());
 
@@ -105,10 +179,14 @@ public class RPSGame extends JFrame {
 	private JPanel winnerTextContainer = new JPanel(new GridLayout(0, 2));
 	private JPanel winnerContainer = new JPanel(new GridLayout(0, 3));
 
-	private JList allGames = new JList();
+	private final GameListModel allGamesModel = new GameListModel(service,
+			false);
+	private JList allGames = new JList(allGamesModel);
 	private JScrollPane allGamesScroller = new JScrollPane(allGames);
 
-	private JList savedGames = new JList();
+	private final GameListModel savedGamesModel = new GameListModel(service,
+			true);
+	private JList savedGames = new JList(savedGamesModel);
 	private JScrollPane savedGamesScroller = new JScrollPane(savedGames);
 
 	private JTextArea gameStatistics = new JTextArea(10, 10);
@@ -137,11 +215,71 @@ public class RPSGame extends JFrame {
 	private JLabel roundsTied = new JLabel("Rounds Tied: ");
 	private JLabel roundsLost = new JLabel("Rounds Lost: ");
 
+	/** Screens built so far. Each is built once, when first needed. */
+	private boolean continueSavedGameBuilt = false;
+	private boolean gameMenuBuilt = false;
+	private boolean winnerBuilt = false;
+	private boolean statsBuilt = false;
+
+	/** Fonts by size, shared by every screen. */
+	private static final Map<Integer, Font> fonts = new HashMap<Integer, Font>();
+
+	/**
+	 * @param size
+	 *            - Point size of the font.
+	 * @return - The bold Verdana font of a size used throughout the game.
+	 */
+	static Font font(int size) {
+		synchronized (fonts) {
+			Font font = fonts.get(size);
+			if (font == null) {
+				font = new Font("Verdana", Font.BOLD, size);
+				fonts.put(size, font);
+			}
+			return font;
+		}
+	}
+
+	/**
+	 * Shows how far the saved games have loaded in the footer. The start menu
+	 * buttons stay disabled until loading is done.
+	 */
+	public void update(final long read, final long total, final int games,
+			final boolean done) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (done) {
+					footer.setText("Mark Robinson");
+				} else {
+					footer.setText(String.format(
+							"Loading saved games - %d%% (%d games)",
+							total == 0 ? 100 : read * 100 / total, games));
+				}
+				for (Component button : startMenuContainer.getComponents()) {
+					button.setEnabled(done);
+				}
+				if (done) {
+					Startup.mark("saved games loaded");
+					service.compact();
+				}
+			}
+		});
+	}
+
 	/**
 	 * Syncs stat data to display objects.
 	 */
 	public void syncStatsForDisplay() {
-		String[] data = Link.localDataStore.getSavedStatistics();
+		service.statistics(new GameService.Callback<GameModel.Statistics>() {
+			public void done(GameModel.Statistics totals) {
+				if (totals != null) {
+					showStats(XMLStore.formatStatistics(totals));
+				}
+			}
+		});
+	}
+
+	private void showStats(String[] data) {
 		totalGames.setText(data[0]);
 		gamesWon.setText(data[1]);
 		gamesLost.setText(data[2]);
@@ -158,22 +296,7 @@ public class RPSGame extends JFrame {
 	 * @return String representing who won the round.
 	 */
 	public String determineWinner() {
-		if (cpuSelected == userSelected) {
-			return "Nobody won the round. Throw again!";
-		} else if (cpuSelected == "rock" && userSelected == "scissor") {
-			return "The CPU won the round. Rock beats scissor.";
-		} else if (cpuSelected == "paper" && userSelected == "rock") {
-			return "The CPU won the round. Paper beats rock.";
-		} else if (cpuSelected == "scissor" && userSelected == "paper") {
-			return "The CPU won the round. Scissor beats paper.";
-		} else if (userSelected == "rock" && cpuSelected == "scissor") {
-			return "You won the round! Rock beats scissor.";
-		} else if (userSelected == "paper" && cpuSelected == "rock") {
-			return "You won the round! Paper beats rock.";
-		} else if (userSelected == "scissor" && cpuSelected == "paper") {
-			return "You won the round! Scissor beats paper.";
-		}
-		return "Nobody won because of an error.";
+		return RoundResolver.explain(userSelected, cpuSelected);
 	}
 
 	/**
@@ -183,135 +306,89 @@ public class RPSGame extends JFrame {
 	 *         occured. (-1: error; 0: user won; 1: CPU won; 2: Tie)
 	 */
 	public int roundWinner() {
-		if (cpuSelected == userSelected) {
-			return 2;
-		} else if (cpuSelected == "rock" && userSelected == "scissor") {
-			return 1;
-		} else if (cpuSelected == "paper" && userSelected == "rock") {
-			return 1;
-		} else if (cpuSelected == "scissor" && userSelected == "paper") {
-			return 1;
-		} else if (userSelected == "rock" && cpuSelected == "scissor") {
-			return 0;
-		} else if (userSelected == "paper" && cpuSelected == "rock") {
-			return 0;
-		} else if (userSelected == "scissor" && cpuSelected == "paper") {
-			return 0;
-		}
-		return -1;
+		return RoundResolver.result(userSelected, cpuSelected);
 	}
 
 	/**
-	 * Simulates the cpu choosing a destroyer at random.
+	 * Simulates the cpu choosing a destroyer at random, using this thread's
+	 * generator so the choices repeat when "rps.seed" is given again.
 	 * 
 	 * @return An integer between 1 and 3 which represents the destroyer was
 	 *         selected by the cpu
 	 */
 	public int cpuChoose() {
-		return (int) (Math.random() * (3 - 1 + 1)) + 1;
+		return cpuChoose(GameRandom.current());
 	}
 
 	/**
-	 * Switches the game view from the menu to the results of the round.
+	 * Simulates the cpu choosing a destroyer at random, or, when "rps.cpu" is
+	 * "adaptive", choosing whatever beats the player's predicted throw.
 	 * 
-	 * @param input
-	 *            - The input String representing which image was selected by
-	 *            the user.
+	 * @param random
+	 *            - The generator to choose with.
+	 * @return An integer between 1 and 3 which represents the destroyer was
+	 *         selected by the cpu
 	 */
-	public void chosen(String input) {
+	public int cpuChoose(GameRandom random) {
+		return service.cpuChoose(random);
+	}
 
-		Element globalSettings = (Element) Link.doc.getElementsByTagName(
-				"globalSettings").item(0);
+	/**
+	 * Plays a round with the destroyer selected by the user, then switches the
+	 * game view from the menu to the results of the round. Clicks made while
+	 * the round is being played are ignored.
+	 * 
+	 * @param input
+	 *            - The destroyer selected by the user.
+	 */
+	public void chosen(Throw input) {
+		if (roundPending) {
+			return;
+		}
+		roundPending = true;
+		ensureWinner();
+
+		service.playRound(input, new GameService.Callback<GameService.Round>() {
+			public void done(GameService.Round round) {
+				roundPending = false;
+				if (round != null) {
+					showRound(round);
+				}
+			}
+		});
+	}
 
-		userSelected = input;
-		userText.setText("You - " + input);
+	/**
+	 * Shows the results of a round played by chosen().
+	 */
+	private void showRound(GameService.Round round) {
+		userSelected = round.player;
+		cpuSelected = round.cpu;
+		userText.setText("You - " + userSelected);
 
 		try {
-			userSelectedImg.setIcon(new ImageIcon(ImageIO.read(new File("imgs/"
-					+ input + ".png"))));
+			userSelectedImg.setIcon(Images.icon(userSelected));
 		} catch (IOException e) {
 		}
 
-		int cpu = cpuChoose();
-		cpuSelected = cpu == 1 ? "rock" : cpu == 2 ? "paper" : "scissor";
 		cpuText.setText("CPU - " + cpuSelected);
 
 		try {
-			cpuSelectedImg.setIcon(new ImageIcon(ImageIO.read(new File("imgs/"
-					+ cpuSelected + ".png"))));
+			cpuSelectedImg.setIcon(Images.icon(cpuSelected));
 		} catch (IOException e) {
 		}
 
-		if (roundWinner() == 0) {
-			globalSettings.setAttribute("totalUserRoundWins", String
-					.valueOf(Integer.parseInt(globalSettings
-							.getAttribute("totalUserRoundWins")) + 1));
-			Link.localDataStore
-					.setAttributeOfActiveGameElement(
-							"playerWins",
-							String.valueOf(Integer.parseInt(Link.localDataStore
-									.getAttributeOfActiveGameElement("playerWins")) + 1));
-		} else if (roundWinner() == 1) {
-			globalSettings.setAttribute("totalUserRoundLoses", String
-					.valueOf(Integer.parseInt(globalSettings
-							.getAttribute("totalUserRoundLoses")) + 1));
-			Link.localDataStore
-					.setAttributeOfActiveGameElement(
-							"playerLoses",
-							String.valueOf(Integer.parseInt(Link.localDataStore
-									.getAttributeOfActiveGameElement("playerLoses")) + 1));
-		} else if (roundWinner() == 2) {
-			globalSettings.setAttribute("totalUserRoundTies", String
-					.valueOf(Integer.parseInt(globalSettings
-							.getAttribute("totalUserRoundTies")) + 1));
-			Link.localDataStore
-					.setAttributeOfActiveGameElement(
-							"playerTies",
-							String.valueOf(Integer.parseInt(Link.localDataStore
-									.getAttributeOfActiveGameElement("playerTies")) + 1));
-			Link.localDataStore.getActiveGameElement().setAttribute(
-					"currentRound",
-					String.valueOf(Integer.parseInt(Link.localDataStore
-							.getActiveGameElement()
-							.getAttribute("currentRound")) - 1));
+		if (round.tieBreaker) {
+			gameText.setText("Game tie breaker round is required.");
+		} else if (round.gameWinner == RoundResolver.GAME_PLAYER) {
+			gameText.setText("You won this game with " + round.wins
+					+ " wins : " + round.loses + " losses.");
+		} else if (round.gameWinner == RoundResolver.GAME_CPU) {
+			gameText.setText("The CPU won this game with " + round.loses
+					+ " wins : " + round.wins + " losses.");
 		}
 
-		if (Integer.parseInt(Link.localDataStore.getActiveGameElement()
-				.getAttribute("currentRound")) == Integer
-				.parseInt(Link.localDataStore.getActiveGameElement()
-						.getAttribute("bestOf"))) {
-
-			if (Link.localDataStore.determineGameWinner() == 0) {
-				gameText.setText("Game tie breaker round is required.");
-
-				Link.localDataStore.getActiveGameElement()
-						.setAttribute(
-								"bestOf",
-								String.valueOf(Integer
-										.parseInt(Link.localDataStore
-												.getActiveGameElement()
-												.getAttribute("bestOf")) + 1));
-			} else if (Link.localDataStore.determineGameWinner() == 1) {
-				gameText.setText("You won this game with "
-						+ Link.localDataStore
-								.getAttributeOfActiveGameElement("playerWins")
-						+ " wins : "
-						+ Link.localDataStore
-								.getAttributeOfActiveGameElement("playerLoses")
-						+ " losses.");
-			} else if (Link.localDataStore.determineGameWinner() == 2) {
-				gameText.setText("The CPU won this game with "
-						+ Link.localDataStore
-								.getAttributeOfActiveGameElement("playerLoses")
-						+ " wins : "
-						+ Link.localDataStore
-								.getAttributeOfActiveGameElement("playerWins")
-						+ " losses.");
-			}
-
-		}
-
-		winnerText.setText(determineWinner());
+		winnerText.setText(round.explanation);
 		gameMenu.setVisible(false);
 		winner.setVisible(true);
 		content.remove(gameMenu);
@@ -319,6 +396,76 @@ public class RPSGame extends JFrame {
 
 	}
 
+	/**
+	 * Shows the round and score of the active game in the status bar.
+	 */
+	private void showStatus(GameService.Status status) {
+		roundStatus.setText("Round " + status.currentRound + " of "
+				+ status.bestOf);
+		roundStatus.setVisible(true);
+		gameScore.setText(status.score);
+		gameScore.setVisible(true);
+	}
+
+	/**
+	 * Builds the screens that are not built yet, one per event, so the window
+	 * keeps responding while they are built after it has been shown.
+	 */
+	private void warmScreens() {
+		SwingUtilities.invokeLater(new Runnable() {
+			private int step = 0;
+
+			public void run() {
+				switch (step++) {
+				case 0:
+					ensureGameMenu();
+					break;
+				case 1:
+					ensureWinner();
+					break;
+				case 2:
+					ensureContinueSavedGame();
+					break;
+				case 3:
+					ensureStats();
+					break;
+				default:
+					Startup.mark("screens built");
+					return;
+				}
+				SwingUtilities.invokeLater(this);
+			}
+		});
+	}
+
+	private void ensureContinueSavedGame() {
+		if (!continueSavedGameBuilt) {
+			continueSavedGameBuilt = true;
+			buildContinueSavedGame();
+		}
+	}
+
+	private void ensureGameMenu() {
+		if (!gameMenuBuilt) {
+			gameMenuBuilt = true;
+			buildGameMenu();
+		}
+	}
+
+	private void ensureWinner() {
+		if (!winnerBuilt) {
+			winnerBuilt = true;
+			buildWinner();
+		}
+	}
+
+	private void ensureStats() {
+		if (!statsBuilt) {
+			statsBuilt = true;
+			buildStats();
+		}
+	}
+
 	/**
 	 * Builds a panel to show all user games and their statistics.
 	 */
@@ -333,38 +480,48 @@ public class RPSGame extends JFrame {
 		JButton backToMenu = new JButton("Back to Menu");
 
 		gamesTitle.setHorizontalAlignment(SwingConstants.CENTER);
-		gamesTitle.setFont(new Font("Verdana", Font.BOLD, 20));
+		gamesTitle.setFont(font(20));
 
 		totalGames.setHorizontalAlignment(SwingConstants.CENTER);
-		totalGames.setFont(new Font("Verdana", Font.BOLD, 18));
+		totalGames.setFont(font(18));
 		gamesWon.setHorizontalAlignment(SwingConstants.CENTER);
-		gamesWon.setFont(new Font("Verdana", Font.BOLD, 15));
+		gamesWon.setFont(font(15));
 		gamesLost.setHorizontalAlignment(SwingConstants.CENTER);
-		gamesLost.setFont(new Font("Verdana", Font.BOLD, 15));
+		gamesLost.setFont(font(15));
 		gamesPending.setHorizontalAlignment(SwingConstants.CENTER);
-		gamesPending.setFont(new Font("Verdana", Font.BOLD, 15));
+		gamesPending.setFont(font(15));
 		totalRounds.setHorizontalAlignment(SwingConstants.CENTER);
-		totalRounds.setFont(new Font("Verdana", Font.BOLD, 18));
+		totalRounds.setFont(font(18));
 		roundsLost.setHorizontalAlignment(SwingConstants.CENTER);
-		roundsLost.setFont(new Font("Verdana", Font.BOLD, 15));
+		roundsLost.setFont(font(15));
 		roundsWon.setHorizontalAlignment(SwingConstants.CENTER);
-		roundsWon.setFont(new Font("Verdana", Font.BOLD, 15));
+		roundsWon.setFont(font(15));
 		roundsTied.setHorizontalAlignment(SwingConstants.CENTER);
-		roundsTied.setFont(new Font("Verdana", Font.BOLD, 15));
+		roundsTied.setFont(font(15));
 
 		allGames.setSelectionMode(ListSelectionModel.SINGLE_INTERVAL_SELECTION);
 		allGames.setLayoutOrientation(JList.VERTICAL);
 		allGames.setVisibleRowCount(0);
-		allGames.setFont(new Font("Verdana", Font.BOLD, 20));
+		// Sizes every row alike, so the list never formats rows to measure them.
+		allGames.setPrototypeCellValue("Game 0000000 - Pending Victory");
+		allGames.setFont(font(20));
 		allGames.setOpaque(false);
 		allGames.setBackground(new Color(0, 0, 0, 20));
 
 		allGames.addListSelectionListener(new ListSelectionListener() {
 			@Override
 			public void valueChanged(ListSelectionEvent e) {
-				String statistics = Link.localDataStore
-						.getGameStatistics(allGames.getSelectedIndex() + 1);
-				gameStatistics.setText(statistics);
+				int gameName = allGamesModel.getGameName(allGames
+						.getSelectedIndex());
+				if (gameName < 0) {
+					return;
+				}
+				service.gameStatistics(gameName,
+						new GameService.Callback<String>() {
+							public void done(String statistics) {
+								gameStatistics.setText(statistics);
+							}
+						});
 			}
 		});
 
@@ -381,13 +538,13 @@ public class RPSGame extends JFrame {
 		gameStatistics.setOpaque(false);
 		gameStatistics.setEditable(false);
 		gameStatistics.setFocusable(false);
-		gameStatistics.setFont(new Font("Verdana", Font.BOLD, 20));
+		gameStatistics.setFont(font(20));
 
 		title.setHorizontalAlignment(SwingConstants.CENTER);
-		title.setFont(new Font("Verdana", Font.BOLD, 50));
+		title.setFont(font(50));
 		title.setOpaque(false);
 
-		backToMenu.setFont(new Font("Verdana", Font.BOLD, 30));
+		backToMenu.setFont(font(30));
 		backToMenu.setOpaque(false);
 		backToMenu.setBackground(new Color(0, 0, 0, 0));
 		backToMenu.setBorderPainted(false);
@@ -450,14 +607,15 @@ public class RPSGame extends JFrame {
 		JButton continueGame = new JButton("Continue Game");
 
 		title.setHorizontalAlignment(SwingConstants.CENTER);
-		title.setFont(new Font("Verdana", Font.BOLD, 50));
+		title.setFont(font(50));
 		title.setOpaque(false);
 
 		savedGames
 				.setSelectionMode(ListSelectionModel.SINGLE_INTERVAL_SELECTION);
 		savedGames.setLayoutOrientation(JList.VERTICAL);
 		savedGames.setVisibleRowCount(0);
-		savedGames.setFont(new Font("Verdana", Font.BOLD, 35));
+		savedGames.setPrototypeCellValue("Game 0000000 - Pending Victory");
+		savedGames.setFont(font(35));
 		savedGames.setOpaque(false);
 		savedGames.setBackground(new Color(0, 0, 0, 20));
 
@@ -472,20 +630,15 @@ public class RPSGame extends JFrame {
 		savedGames.addListSelectionListener(new ListSelectionListener() {
 			@Override
 			public void valueChanged(ListSelectionEvent arg0) {
-				if (arg0.getValueIsAdjusting()) {
-					String[] list = Link.localDataStore
-							.convertGamesListForDisplay(Link.localDataStore
-									.getGamesList());
-					int foundInGameList = 0;
-					for (int index = 0; index < list.length; index++) {
-						if (list[index].equals(savedGames.getModel()
-								.getElementAt(savedGames.getSelectedIndex()))) {
-							foundInGameList = index;
-						}
-					}
-					String statistics = Link.localDataStore
-							.getGameStatistics(foundInGameList + 1);
-					savedGameStatistics.setText(statistics);
+				int gameName = savedGamesModel.getGameName(savedGames
+						.getSelectedIndex());
+				if (arg0.getValueIsAdjusting() && gameName >= 0) {
+					service.gameStatistics(gameName,
+							new GameService.Callback<String>() {
+								public void done(String statistics) {
+									savedGameStatistics.setText(statistics);
+								}
+							});
 				}
 			}
 		});
@@ -499,7 +652,7 @@ public class RPSGame extends JFrame {
 		savedGameStatistics.setOpaque(false);
 		savedGameStatistics.setEditable(false);
 		savedGameStatistics.setFocusable(false);
-		savedGameStatistics.setFont(new Font("Verdana", Font.BOLD, 20));
+		savedGameStatistics.setFont(font(20));
 
 		statisticsScroller.setOpaque(false);
 		statisticsScroller.getViewport().setOpaque(false);
@@ -507,7 +660,7 @@ public class RPSGame extends JFrame {
 		statisticsScroller
 				.setComponentOrientation(ComponentOrientation.RIGHT_TO_LEFT);
 
-		continueGame.setFont(new Font("Verdana", Font.BOLD, 40));
+		continueGame.setFont(font(40));
 		continueGame.setOpaque(false);
 		continueGame.setBackground(new Color(0, 0, 0, 0));
 		continueGame.setBorderPainted(false);
@@ -516,43 +669,30 @@ public class RPSGame extends JFrame {
 		continueGame.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
-				String[] list = Link.localDataStore
-						.convertGamesListForDisplay(Link.localDataStore
-								.getGamesList());
-				int foundInGameList = 0;
-				if (savedGames.getModel().getSize() > 0) {
-					for (int index = 0; index < list.length; index++) {
-						if (list[index].equals(savedGames.getModel()
-								.getElementAt(savedGames.getSelectedIndex()))) {
-							foundInGameList = index;
-						}
-					}
-
-					Element newActiveGameElement = (Element) Link.doc
-							.getElementsByTagName("game").item(foundInGameList);
-
-					roundStatus.setText("Round "
-							+ newActiveGameElement.getAttribute("currentRound")
-							+ " of "
-							+ newActiveGameElement.getAttribute("bestOf"));
-
-					roundStatus.setVisible(true);
-
-					Link.activeGame = newActiveGameElement.getAttribute("name");
-
-					gameScore.setText(Link.localDataStore.getScoreDisplay());
-					gameScore.setVisible(true);
-
-					continueGameMenu.setVisible(false);
-					gameMenu.setVisible(true);
-					content.remove(continueGameMenu);
-					content.add(gameMenu, BorderLayout.CENTER);
-					content.revalidate();
+				int gameName = savedGamesModel.getGameName(savedGames
+						.getSelectedIndex());
+				if (gameName >= 0) {
+					ensureGameMenu();
+					service.continueGame(gameName,
+							new GameService.Callback<GameService.Status>() {
+								public void done(GameService.Status status) {
+									if (status == null) {
+										return;
+									}
+									showStatus(status);
+
+									continueGameMenu.setVisible(false);
+									gameMenu.setVisible(true);
+									content.remove(continueGameMenu);
+									content.add(gameMenu, BorderLayout.CENTER);
+									content.revalidate();
+								}
+							});
 				}
 			}
 		});
 
-		deleteGame.setFont(new Font("Verdana", Font.BOLD, 40));
+		deleteGame.setFont(font(40));
 		deleteGame.setOpaque(false);
 		deleteGame.setBackground(new Color(0, 0, 0, 0));
 		deleteGame.setBorderPainted(false);
@@ -561,60 +701,36 @@ public class RPSGame extends JFrame {
 		deleteGame.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
-				int result = JOptionPane
-						.showConfirmDialog(null,
-								"Are you sure that you want to delete this saved game?");
-				String[] list = Link.localDataStore
-						.cleanList(Link.localDataStore
-								.convertGamesListForDisplay(Link.localDataStore
-										.getGamesList()));
-
-				if (result == 0 && savedGames.getSelectedIndex() >= 0) {
-
-					int foundInGameList = 0;
-					for (int index = 0; index < list.length; index++) {
-						if (list[index].equals(savedGames.getModel()
-								.getElementAt(savedGames.getSelectedIndex()))) {
-							foundInGameList = index;
-						}
-					}
-
-					System.out.println(Link.doc.getElementsByTagName("game")
-							.item(foundInGameList).getAttributes()
-							.getNamedItem("name"));
-
-					int gameNum = Integer.parseInt(Link.doc
-							.getElementsByTagName("game").item(foundInGameList)
-							.getAttributes().getNamedItem("name")
-							.getTextContent());
-
-					Link.doc.getDocumentElement().removeChild(
-							Link.doc.getElementsByTagName("game").item(
-									foundInGameList));
-
-					for (int index = 0; index < Link.localDataStore
-							.getGamesList().length; index++) {
-						if (Integer.parseInt(Link.localDataStore.getGamesList()[index]
-								.getAttribute("name")) > gameNum) {
-							Link.localDataStore.getGamesList()[index].setAttribute(
-									"name", String.valueOf(Integer
-											.parseInt(Link.localDataStore
-													.getGamesList()[index]
-													.getAttribute("name")) - 1));
+				int first = savedGames.getMinSelectionIndex();
+				int last = savedGames.getMaxSelectionIndex();
+				if (first < 0) {
+					return;
+				}
+				int result = JOptionPane.showConfirmDialog(null,
+						first == last ? "Are you sure that you want to delete "
+								+ "this saved game?"
+								: "Are you sure that you want to delete these "
+										+ (last - first + 1) + " saved games?");
+				if (result == 0) {
+					GameService.Callback<Integer> refresh = new GameService.Callback<Integer>() {
+						public void done(Integer deleted) {
+							savedGamesModel.refresh();
+							savedGameStatistics.setText("");
 						}
+					};
+					int[] gameNames = savedGamesModel.getGameNames(first, last);
+					if (gameNames != null) {
+						service.deleteGames(gameNames, refresh);
+					} else {
+						// Part of the range has not been read since it was
+						// selected, so it is found by its place in the list.
+						service.deleteGames(true, first, last, refresh);
 					}
-
-					savedGames.setListData(Link.localDataStore.cleanList(Link.localDataStore
-							.convertGamesListForDisplay(Link.localDataStore
-									.getSavedGamesList())));
-
-					savedGameStatistics.setText("");
-
 				}
 			}
 		});
 
-		backToMenu.setFont(new Font("Verdana", Font.BOLD, 30));
+		backToMenu.setFont(font(30));
 		backToMenu.setOpaque(false);
 		backToMenu.setBackground(new Color(0, 0, 0, 0));
 		backToMenu.setBorderPainted(false);
@@ -660,22 +776,22 @@ public class RPSGame extends JFrame {
 		JButton viewStats = new JButton("View Stats");
 
 		title.setHorizontalAlignment(SwingConstants.CENTER);
-		title.setFont(new Font("Verdana", Font.BOLD, 50));
+		title.setFont(font(50));
 		title.setOpaque(false);
 
-		continueSavedGame.setFont(new Font("Verdana", Font.BOLD, 30));
+		continueSavedGame.setFont(font(30));
 		continueSavedGame.setOpaque(false);
 		continueSavedGame.setBackground(new Color(0, 0, 0, 0));
 		continueSavedGame.setBorderPainted(false);
 		continueSavedGame.setFocusPainted(false);
 
-		startGame.setFont(new Font("Verdana", Font.BOLD, 30));
+		startGame.setFont(font(30));
 		startGame.setOpaque(false);
 		startGame.setBackground(new Color(0, 0, 0, 0));
 		startGame.setBorderPainted(false);
 		startGame.setFocusPainted(false);
 
-		viewStats.setFont(new Font("Verdana", Font.BOLD, 30));
+		viewStats.setFont(font(30));
 		viewStats.setOpaque(false);
 		viewStats.setBackground(new Color(0, 0, 0, 0));
 		viewStats.setBorderPainted(false);
@@ -684,9 +800,8 @@ public class RPSGame extends JFrame {
 		viewStats.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				allGames.setListData(Link.localDataStore
-						.convertGamesListForDisplay(Link.localDataStore
-								.getGamesList()));
+				ensureStats();
+				allGamesModel.refresh();
 				syncStatsForDisplay();
 				startMenu.setVisible(false);
 				statsMenu.setVisible(true);
@@ -698,62 +813,44 @@ public class RPSGame extends JFrame {
 
 		startGame.addActionListener(new ActionListener() {
 			public void actionPerformed(final ActionEvent e) {
-				new SwingWorker() {
-					@Override
-					protected Object doInBackground() throws Exception {
-
-						String roundsToPlay = JOptionPane
-								.showInputDialog(
-										null,
-										"How many rounds should be played before determining a winner?",
-										3);
-
-						if (!roundsToPlay.isEmpty()) {
-
-							Element gameSettings = (Element) Link.doc
-									.getElementsByTagName("globalSettings")
-									.item(0);
-
-							gameSettings.setAttribute("bestOf", roundsToPlay);
-
-						}
+				ensureGameMenu();
+				String roundsToPlay = JOptionPane
+						.showInputDialog(
+								null,
+								"How many rounds should be played before determining a winner?",
+								3);
+				if (roundsToPlay == null) {
+					return;
+				}
 
-						roundStatus.setText("Round 1"
-								+ " of "
-								+ Link.doc
-										.getElementsByTagName("globalSettings")
-										.item(0).getAttributes()
-										.getNamedItem("bestOf").getNodeValue());
-
-						roundStatus.setVisible(true);
-						Link.localDataStore.makeNewGame();
-
-						gameScore.setText(Link.localDataStore.getScoreDisplay());
-						gameScore.setVisible(true);
-
-						startMenu.setVisible(false);
-						gameMenu.setVisible(true);
-						content.remove(startMenu);
-						content.add(gameMenu, BorderLayout.CENTER);
-						content.revalidate();
-						content.repaint();
-						return e;
-					};
-				}.execute();
+				service.startGame(roundsToPlay,
+						new GameService.Callback<GameService.Status>() {
+							public void done(GameService.Status status) {
+								if (status == null) {
+									return;
+								}
+								showStatus(status);
+
+								startMenu.setVisible(false);
+								gameMenu.setVisible(true);
+								content.remove(startMenu);
+								content.add(gameMenu, BorderLayout.CENTER);
+								content.revalidate();
+								content.repaint();
+							}
+						});
 			}
 		});
 
 		continueSavedGame.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(final ActionEvent e) {
+				ensureContinueSavedGame();
 
 				startMenu.setVisible(false);
 				continueGameMenu.setVisible(true);
 
-				savedGames.setListData(Link.localDataStore
-						.cleanList(Link.localDataStore
-								.convertGamesListForDisplay(Link.localDataStore
-										.getSavedGamesList())));
+				savedGamesModel.refresh();
 
 				savedGameStatistics.setText("");
 
@@ -767,6 +864,11 @@ public class RPSGame extends JFrame {
 		startMenuContainer.add(continueSavedGame);
 		startMenuContainer.add(viewStats);
 
+		// Enabled by update() once the saved games have loaded.
+		startGame.setEnabled(false);
+		continueSavedGame.setEnabled(false);
+		viewStats.setEnabled(false);
+
 		startMenu.add(title, BorderLayout.NORTH);
 		startMenu.setOpaque(false);
 		startMenuContainer.setOpaque(false);
@@ -797,20 +899,20 @@ public class RPSGame extends JFrame {
 		scissor.setFocusPainted(false);
 
 		instructions.setHorizontalAlignment(SwingConstants.CENTER);
-		instructions.setFont(new Font("Verdana", Font.BOLD, 50));
+		instructions.setFont(font(50));
 		rock.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
-				chosen("rock");
+				chosen(Throw.ROCK);
 			}
 		});
 		paper.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				chosen("paper");
+				chosen(Throw.PAPER);
 			}
 		});
 		scissor.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				chosen("scissor");
+				chosen(Throw.SCISSOR);
 			}
 		});
 		gameMenuContainer.add(rock);
@@ -822,11 +924,9 @@ public class RPSGame extends JFrame {
 		gameMenu.add(instructions, BorderLayout.NORTH);
 		gameMenu.add(gameMenuContainer, BorderLayout.CENTER);
 		try {
-			rock.setIcon(new ImageIcon(ImageIO.read(new File("imgs/rock.png"))));
-			paper.setIcon(new ImageIcon(ImageIO
-					.read(new File("imgs/paper.png"))));
-			scissor.setIcon(new ImageIcon(ImageIO.read(new File(
-					"imgs/scissor.png"))));
+			rock.setIcon(Images.icon(Throw.ROCK));
+			paper.setIcon(Images.icon(Throw.PAPER));
+			scissor.setIcon(Images.icon(Throw.SCISSOR));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -847,64 +947,51 @@ public class RPSGame extends JFrame {
 		playAgain.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
 
+				if (roundPending) {
+					return;
+				}
+				roundPending = true;
 				gameText.setText("");
 
-				if (Integer.parseInt(Link.localDataStore.getActiveGameElement()
-						.getAttribute("currentRound")) < Integer
-						.parseInt(Link.localDataStore.getActiveGameElement()
-								.getAttribute("bestOf"))) {
-					Link.localDataStore.getActiveGameElement().setAttribute(
-							"currentRound",
-							String.valueOf(Integer.parseInt(Link.localDataStore
-									.getActiveGameElement().getAttribute(
-											"currentRound")) + 1));
-
-					roundStatus.setText("Round "
-							+ Link.localDataStore
-									.getAttributeOfActiveGameElement("currentRound")
-							+ " of "
-							+ Link.localDataStore
-									.getAttributeOfActiveGameElement("bestOf"));
-
-					gameScore.setText(Link.localDataStore.getScoreDisplay());
-
-					winner.setVisible(false);
-					gameMenu.setVisible(true);
-
-					content.remove(winner);
-					content.add(gameMenu, BorderLayout.CENTER);
-
-				} else if (Integer.parseInt(Link.localDataStore
-						.getActiveGameElement().getAttribute("currentRound")) == Integer
-						.parseInt(Link.localDataStore.getActiveGameElement()
-								.getAttribute("bestOf"))) {
+				service.nextRound(new GameService.Callback<GameService.Status>() {
+					public void done(GameService.Status status) {
+						roundPending = false;
+						if (status == null) {
+							return;
+						}
+						if (!status.ended) {
+							showStatus(status);
 
-					Link.localDataStore.getActiveGameElement().setAttribute(
-							"ended", Link.time.toString());
+							winner.setVisible(false);
+							gameMenu.setVisible(true);
 
-					Link.localDataStore.determineAndSetGameWinner();
+							content.remove(winner);
+							content.add(gameMenu, BorderLayout.CENTER);
 
-					roundStatus.setVisible(false);
-					gameScore.setVisible(false);
-					winner.setVisible(false);
-					startMenu.setVisible(true);
+						} else {
+							roundStatus.setVisible(false);
+							gameScore.setVisible(false);
+							winner.setVisible(false);
+							startMenu.setVisible(true);
 
-					content.remove(winner);
-					content.add(startMenu, BorderLayout.CENTER);
-				}
+							content.remove(winner);
+							content.add(startMenu, BorderLayout.CENTER);
+						}
+					}
+				});
 			}
 		});
 		gameText.setHorizontalAlignment(SwingConstants.CENTER);
-		gameText.setFont(new Font("Verdana", Font.BOLD, 30));
+		gameText.setFont(font(30));
 		gameText.setBorder(null);
 		gameText.setOpaque(false);
 
 		winnerText.setHorizontalAlignment(SwingConstants.CENTER);
-		winnerText.setFont(new Font("Verdana", Font.BOLD, 30));
+		winnerText.setFont(font(30));
 		winnerText.setBorder(null);
 		winnerText.setOpaque(false);
 
-		playAgain.setFont(new Font("Verdana", Font.BOLD, 30));
+		playAgain.setFont(font(30));
 
 		winnerBottomContainerBottom.add(gameText, BorderLayout.NORTH);
 		winnerBottomContainerBottom.add(playAgain, BorderLayout.SOUTH);
@@ -916,10 +1003,10 @@ public class RPSGame extends JFrame {
 		winnerBottomContainer.add(winnerBottomContainerBottom,
 				BorderLayout.SOUTH);
 		cpuText.setHorizontalAlignment(SwingConstants.CENTER);
-		cpuText.setFont(new Font("Verdana", Font.BOLD, 36));
+		cpuText.setFont(font(36));
 		winnerTextContainer.add(cpuText);
 		userText.setHorizontalAlignment(SwingConstants.CENTER);
-		userText.setFont(new Font("Verdana", Font.BOLD, 36));
+		userText.setFont(font(36));
 		winnerTextContainer.add(userText);
 		userSelectedImg.setOpaque(false);
 		cpuSelectedImg.setOpaque(false);
@@ -934,8 +1021,7 @@ public class RPSGame extends JFrame {
 		winner.add(winnerContainer, BorderLayout.CENTER);
 		winner.add(winnerBottomContainer, BorderLayout.SOUTH);
 		try {
-			fightImg.setIcon(new ImageIcon(ImageIO.read(new File(
-					"imgs/fight.png"))));
+			fightImg.setIcon(Images.icon("fight"));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -955,16 +1041,24 @@ public class RPSGame extends JFrame {
 			@Override
 			public void windowClosing(WindowEvent e) {
 
+				if (Link.debug && content != null) {
+					System.out.println("Background: " + content.getPaintReport());
+				}
 				System.out.println("Waiting for data save operation");
 
-				Link.timer.cancel();
-
 				new SwingWorker() {
 					@Override
 					protected Object doInBackground() throws Exception {
 
-						Thread.sleep(1000);
+						service.close();
+						Link.localDataStore.writeBehind.close();
 
+						if (Link.debug) {
+							System.out.println("Game service: "
+									+ service.getReport());
+							System.out.println("Data saves: "
+									+ Link.localDataStore.writeBehind.getReport());
+						}
 						System.out.println("Exiting");
 
 						System.exit(0);
@@ -979,10 +1073,9 @@ public class RPSGame extends JFrame {
 
 		try {
 			content = new BackgroundPanel(new BorderLayout(),
-					ImageIO.read(new File("imgs/bg.png")));
+					Images.image("bg"));
 			setCursor(Toolkit.getDefaultToolkit().createCustomCursor(
-					ImageIO.read(new File("imgs/mouse.png")), new Point(8, 6),
-					"Game Cursor"));
+					Images.image("mouse"), new Point(8, 6), "Game Cursor"));
 		} catch (IOException e1) {
 			JOptionPane.showMessageDialog(null,
 					"RPSGame was unable to find images",
@@ -990,25 +1083,26 @@ public class RPSGame extends JFrame {
 			e1.printStackTrace();
 		}
 
-		buildContinueSavedGame();
+		Startup.mark("background ready");
+
+		// The other screens are built when first shown, or once the window is
+		// up by warmScreens().
 		buildStartMenu();
-		buildGameMenu();
-		buildWinner();
-		buildStats();
+		Startup.mark("start menu built");
 
 		roundStatus.setOpaque(false);
 		roundStatus.setHorizontalAlignment(SwingConstants.RIGHT);
-		roundStatus.setFont(new Font("Verdana", Font.BOLD, 14));
+		roundStatus.setFont(font(14));
 		roundStatus.setVisible(false);
 
 		gameScore.setOpaque(false);
 		gameScore.setHorizontalAlignment(SwingConstants.RIGHT);
-		gameScore.setFont(new Font("Verdana", Font.BOLD, 14));
+		gameScore.setFont(font(14));
 		gameScore.setVisible(false);
 
 		footer.setOpaque(false);
 		footer.setHorizontalAlignment(SwingConstants.CENTER);
-		footer.setFont(new Font("Verdana", Font.BOLD, 12));
+		footer.setFont(font(12));
 
 		gameTopStatus.setOpaque(false);
 
@@ -1022,6 +1116,8 @@ public class RPSGame extends JFrame {
 		setBounds((screenSize.width / 2) - 400, (screenSize.height / 2) - 300,
 				800, 600);
 		setVisible(true);
-		
+		Startup.mark("window shown");
+
+		warmScreens();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,289 @@
+package workspace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of every change made to the saved games. Each change
+ * is a small fixed-size record, so recording a round costs the same no matter
+ * how much history has been saved. The journal is folded into the saved data
+ * by compact() and replayed over it at startup, so a crash of the
+ * game loses at most the record being written. Records are forced to disk on
+ * a background thread so the thread making a change never waits on the disk.
+ * 
+ * @author Mark Robinson
+ */
+public class RoundJournal {
+
+	/**
+	 * Size of a record in bytes: type, arg, padding, game, sequence, time,
+	 * value and a CRC32 of the preceding 28 bytes.
+	 */
+	static final int RECORD_SIZE = 32;
+
+	static final int CREATE = 1;
+	static final int ROUND = 2;
+	static final int NEXT_ROUND = 3;
+	static final int EXTEND = 4;
+	static final int END = 5;
+	static final int DELETE = 6;
+	static final int BEST_OF = 7;
+
+	/**
+	 * Receives the records read back from the journal.
+	 */
+	public interface Handler {
+		void apply(int type, int game, int arg, long time, int value,
+				long sequence);
+	}
+
+	private final File file;
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+	private final CRC32 crc = new CRC32();
+	private FileChannel channel;
+	private long sequence = 0;
+	private long records = 0;
+	private boolean syncPending = false;
+
+	private final ExecutorService syncer = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "RPS Journal Sync");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * @param file
+	 *            - The file the records are appended to.
+	 */
+	public RoundJournal(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return - The sequence number of the last record written or replayed.
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return - The number of records in the journal file.
+	 */
+	public synchronized long getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Writes one record to the end of the journal, and asks the background
+	 * thread to force it to disk.
+	 * 
+	 * @param type
+	 *            - One of CREATE, ROUND, NEXT_ROUND, EXTEND, END, DELETE or
+	 *            BEST_OF.
+	 * @param game
+	 *            - The name of the game changed, or 0 for global settings.
+	 * @param arg
+	 *            - A small argument such as a round result.
+	 * @param time
+	 *            - Time of the change in milliseconds since the epoch.
+	 * @param value
+	 *            - A larger argument such as the number of rounds to play.
+	 * @return - The sequence number given to the record, or -1 if it could not
+	 *         be written.
+	 */
+	public synchronized long append(int type, int game, int arg, long time,
+			int value) {
+		try {
+			open();
+			record.clear();
+			record.put((byte) type).put((byte) arg).putShort((short) 0)
+					.putInt(game).putLong(sequence + 1).putLong(time)
+					.putInt(value);
+			crc.reset();
+			crc.update(record.array(), 0, RECORD_SIZE - 4);
+			record.putInt((int) crc.getValue());
+			record.flip();
+			while (record.hasRemaining()) {
+				channel.write(record);
+			}
+			records++;
+			sync();
+			return ++sequence;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads every record in the journal newer than the given sequence number
+	 * and hands it to the handler. Reading stops at the first torn or corrupt
+	 * record, which is cut off the end of the file.
+	 * 
+	 * @param after
+	 *            - Sequence number already contained in the saved document.
+	 * @param handler
+	 *            - Receives each record in the order it was written.
+	 * @return - The number of records applied.
+	 */
+	public synchronized int replay(long after, Handler handler) {
+		sequence = Math.max(sequence, after);
+		if (!file.exists()) {
+			return 0;
+		}
+		int applied = 0;
+		try {
+			open();
+			long size = channel.size();
+			long valid = 0;
+			boolean intact = true;
+			ByteBuffer in = ByteBuffer.allocate(RECORD_SIZE * 256);
+			while (intact && size - valid >= RECORD_SIZE) {
+				in.clear();
+				in.limit((int) Math.min(in.capacity(), (size - valid)
+						/ RECORD_SIZE * RECORD_SIZE));
+				while (in.hasRemaining()
+						&& channel.read(in, valid + in.position()) > 0) {
+				}
+				in.flip();
+				while (in.remaining() >= RECORD_SIZE) {
+					int start = in.position();
+					crc.reset();
+					crc.update(in.array(), start, RECORD_SIZE - 4);
+					int type = in.get();
+					int arg = in.get();
+					in.getShort();
+					int game = in.getInt();
+					long seq = in.getLong();
+					long time = in.getLong();
+					int value = in.getInt();
+					if (in.getInt() != (int) crc.getValue()) {
+						intact = false;
+						break;
+					}
+					valid += RECORD_SIZE;
+					if (seq > sequence) {
+						handler.apply(type, game, arg, time, value, seq);
+						sequence = seq;
+						applied++;
+					}
+				}
+			}
+			records = valid / RECORD_SIZE;
+			channel.truncate(valid);
+			channel.position(valid);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return applied;
+	}
+
+	/**
+	 * Removes every record already folded into a saved document. Records
+	 * written after that document was made are kept.
+	 * 
+	 * @param through
+	 *            - Sequence number of the last record contained in the saved
+	 *            document.
+	 */
+	public synchronized void compact(long through) {
+		try {
+			open();
+			if (through >= sequence) {
+				channel.truncate(0);
+				records = 0;
+				return;
+			}
+			long keep = sequence - through;
+			if (keep >= records) {
+				return;
+			}
+			// Copy the records newer than the document to a fresh file.
+			long from = (records - keep) * RECORD_SIZE;
+			File tmp = new File(file.getPath() + ".tmp");
+			FileChannel out = FileChannel.open(tmp.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				channel.transferTo(from, keep * RECORD_SIZE, out);
+				out.force(false);
+			} finally {
+				out.close();
+			}
+			channel.close();
+			channel = null;
+			try {
+				XMLStore.replace(tmp, file);
+			} catch (IOException e) {
+				// The old file is kept whole, so the records count still holds
+				// and the next append opens it again.
+				Files.deleteIfExists(tmp.toPath());
+				throw e;
+			}
+			records = keep;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Closes the journal file. It is opened again by the next append.
+	 */
+	public synchronized void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			channel = null;
+		}
+	}
+
+	/**
+	 * Forces the records written so far to disk on the background thread.
+	 * Records written while a force is running are covered by the next one.
+	 */
+	private void sync() {
+		if (syncPending) {
+			return;
+		}
+		syncPending = true;
+		syncer.execute(new Runnable() {
+			public void run() {
+				FileChannel forcing;
+				synchronized (RoundJournal.this) {
+					syncPending = false;
+					forcing = channel;
+				}
+				try {
+					if (forcing != null) {
+						forcing.force(false);
+					}
+				} catch (IOException e) {
+					// Closed by compact(), which forces the file it keeps.
+				}
+			}
+		});
+	}
+
+	private void open() throws IOException {
+		if (channel == null) {
+			channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			channel.position(channel.size());
+		}
+	}
+}
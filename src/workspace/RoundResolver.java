@@ -0,0 +1,120 @@
+package workspace;
+
+/**
+ * Decides rounds and games. The result and explanation of every pair of
+ * throws is worked out once, in tables indexed by the two throw codes packed
+ * the way GameModel keeps its round history, so deciding a round is a single
+ * array lookup that never allocates.
+ * 
+ * @author Mark Robinson
+ */
+public final class RoundResolver {
+
+	/** Round results, matching RPSGame.roundWinner(). */
+	static final int ERROR = -1;
+	static final int PLAYER = 0;
+	static final int CPU = 1;
+	static final int TIE = 2;
+
+	/** Game results, matching XMLStore.determineGameWinner(). */
+	static final int GAME_TIE = 0;
+	static final int GAME_PLAYER = 1;
+	static final int GAME_CPU = 2;
+
+	private static final int[] RESULTS = new int[16];
+	private static final String[] EXPLANATIONS = new String[16];
+
+	static {
+		for (int player = 0; player < 4; player++) {
+			for (int cpu = 0; cpu < 4; cpu++) {
+				int round = player << 2 | cpu;
+				Throw playerThrow = Throw.fromCode(player);
+				Throw cpuThrow = Throw.fromCode(cpu);
+				if (playerThrow == null || cpuThrow == null) {
+					RESULTS[round] = ERROR;
+					EXPLANATIONS[round] = "Nobody won because of an error.";
+				} else if (player == cpu) {
+					RESULTS[round] = TIE;
+					EXPLANATIONS[round] = "Nobody won the round. Throw again!";
+				} else if ((player - cpu + 3) % 3 == 1) {
+					RESULTS[round] = PLAYER;
+					EXPLANATIONS[round] = "You won the round! "
+							+ beats(playerThrow, cpuThrow);
+				} else {
+					RESULTS[round] = CPU;
+					EXPLANATIONS[round] = "The CPU won the round. "
+							+ beats(cpuThrow, playerThrow);
+				}
+			}
+		}
+	}
+
+	private RoundResolver() {
+	}
+
+	/**
+	 * Packs two throws into a round, as kept in GameModel's round history.
+	 * A missing throw is packed as code 0.
+	 */
+	public static int round(Throw player, Throw cpu) {
+		return (player == null ? 0 : player.code) << 2
+				| (cpu == null ? 0 : cpu.code);
+	}
+
+	/**
+	 * @return - The winner of a round. (-1: error; 0: player won; 1: CPU won;
+	 *         2: Tie)
+	 */
+	public static int result(Throw player, Throw cpu) {
+		return RESULTS[round(player, cpu)];
+	}
+
+	/**
+	 * @param round
+	 *            - The throws of a round packed in 4 bits, as returned by
+	 *            GameModel.getRound().
+	 * @return - The winner of the round, as result() returns it.
+	 */
+	public static int result(int round) {
+		return RESULTS[round & 0xF];
+	}
+
+	/**
+	 * @return Ex: "You won the round! Rock beats scissor."
+	 */
+	public static String explain(Throw player, Throw cpu) {
+		return EXPLANATIONS[round(player, cpu)];
+	}
+
+	/**
+	 * Determines the game winner based on player round wins vs player round
+	 * losses.
+	 * 
+	 * @return - The winner of the game. (0: Tie Game; 1: Player; 2: CPU)
+	 */
+	public static int gameWinner(int playerRoundWins, int playerRoundLoses) {
+		return playerRoundWins > playerRoundLoses ? GAME_PLAYER
+				: playerRoundWins < playerRoundLoses ? GAME_CPU : GAME_TIE;
+	}
+
+	/**
+	 * Decides if a game needs a tie breaker round, once its last round has
+	 * been played.
+	 * 
+	 * @return - True if the current round is the last and the player has won
+	 *         as many rounds as the CPU.
+	 */
+	public static boolean needsTieBreaker(int currentRound, int bestOf,
+			int playerRoundWins, int playerRoundLoses) {
+		return currentRound == bestOf
+				&& gameWinner(playerRoundWins, playerRoundLoses) == GAME_TIE;
+	}
+
+	/**
+	 * @return Ex: "Rock beats scissor."
+	 */
+	private static String beats(Throw winner, Throw loser) {
+		return Character.toUpperCase(winner.label.charAt(0))
+				+ winner.label.substring(1) + " beats " + loser.label + ".";
+	}
+}
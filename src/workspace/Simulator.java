@@ -0,0 +1,210 @@
+package workspace;
+
+/**
+ * Plays games between two strategies without the window or the saved data,
+ * following the same rules as RPSGame: a tied round is played again, and a
+ * game tied after its last round gets a tie breaker round. Games are played
+ * with primitive counters only, so millions of rounds a second can be played
+ * to check changes to the CPU or to the rules before they ship. Two strategies
+ * that always tie would never finish a game, so a game is abandoned after
+ * MAX_ROUNDS rounds.
+ * 
+ * Usage: Simulator player cpu [games] [bestOf] [seed]
+ * 
+ * @author Mark Robinson
+ */
+public class Simulator {
+
+	/**
+	 * Totals of the games played. One tally should only be used by one thread;
+	 * tallies from several threads are combined with merge().
+	 */
+	public static class Tally {
+		long games = 0;
+		long playerGames = 0;
+		long cpuGames = 0;
+		long rounds = 0;
+		long playerRounds = 0;
+		long cpuRounds = 0;
+		long tiedRounds = 0;
+		long tieBreakers = 0;
+		long abandoned = 0;
+
+		/**
+		 * Adds the totals of another tally to this one.
+		 */
+		public void merge(Tally other) {
+			games += other.games;
+			playerGames += other.playerGames;
+			cpuGames += other.cpuGames;
+			rounds += other.rounds;
+			playerRounds += other.playerRounds;
+			cpuRounds += other.cpuRounds;
+			tiedRounds += other.tiedRounds;
+			tieBreakers += other.tieBreakers;
+			abandoned += other.abandoned;
+		}
+
+		/**
+		 * @return - The share of games won by the player, between 0 and 1.
+		 */
+		public double getPlayerWinRate() {
+			return games == 0 ? 0 : (double) playerGames / games;
+		}
+
+		/**
+		 * @return Ex: "1000 games (Player 50.1%, CPU 49.9%), 2997 rounds (won
+		 *         33.4%, lost 33.3%, tied 33.3%), 250 tie breakers, 0
+		 *         abandoned"
+		 */
+		public String toString() {
+			return String.format("%d games (Player %.1f%%, CPU %.1f%%), "
+					+ "%d rounds (won %.1f%%, lost %.1f%%, tied %.1f%%), "
+					+ "%d tie breakers, %d abandoned", games,
+					percent(playerGames, games), percent(cpuGames, games),
+					rounds, percent(playerRounds, rounds),
+					percent(cpuRounds, rounds), percent(tiedRounds, rounds),
+					tieBreakers, abandoned);
+		}
+
+		private static double percent(long part, long whole) {
+			return whole == 0 ? 0 : part * 100.0 / whole;
+		}
+	}
+
+	/** Rounds after which a game is abandoned. */
+	static final int MAX_ROUNDS = 1000;
+
+	private final int bestOf;
+
+	/**
+	 * @param bestOf
+	 *            - Number of rounds to play in each game before determining a
+	 *            winner.
+	 */
+	public Simulator(int bestOf) {
+		this.bestOf = bestOf;
+	}
+
+	/**
+	 * Plays one game.
+	 * 
+	 * @param player
+	 *            - The strategy playing the user's side.
+	 * @param cpu
+	 *            - The strategy playing the CPU's side.
+	 * @param random
+	 *            - The generator both strategies draw from.
+	 * @param tally
+	 *            - Receives the results of the game and its rounds.
+	 * @return - The winner of the game. (0: abandoned; 1: Player; 2: CPU)
+	 */
+	public int playGame(Strategy player, Strategy cpu, GameRandom random,
+			Tally tally) {
+		int rounds = bestOf;
+		int currentRound = 1;
+		int wins = 0;
+		int loses = 0;
+		int ties = 0;
+
+		while (true) {
+			int playerThrow = player.next(random);
+			int cpuThrow = cpu.next(random);
+			player.observe(playerThrow, cpuThrow);
+			cpu.observe(cpuThrow, playerThrow);
+
+			int result = RoundResolver.result(playerThrow << 2 | cpuThrow);
+			if (result == RoundResolver.PLAYER) {
+				wins++;
+			} else if (result == RoundResolver.CPU) {
+				loses++;
+			} else {
+				// Ties do not count towards the rounds played.
+				ties++;
+				currentRound--;
+			}
+
+			if (RoundResolver.needsTieBreaker(currentRound, rounds, wins, loses)) {
+				rounds++;
+				tally.tieBreakers++;
+			}
+			if (currentRound < rounds) {
+				currentRound++;
+			} else {
+				break;
+			}
+			if (wins + loses + ties == MAX_ROUNDS) {
+				break;
+			}
+		}
+
+		tally.games++;
+		tally.rounds += wins + loses + ties;
+		tally.playerRounds += wins;
+		tally.cpuRounds += loses;
+		tally.tiedRounds += ties;
+		if (currentRound < rounds) {
+			tally.abandoned++;
+			return RoundResolver.GAME_TIE;
+		}
+		// A game can only end tied after an error; like XMLStore, the CPU
+		// gets it.
+		if (RoundResolver.gameWinner(wins, loses) == RoundResolver.GAME_PLAYER) {
+			tally.playerGames++;
+			return RoundResolver.GAME_PLAYER;
+		}
+		tally.cpuGames++;
+		return RoundResolver.GAME_CPU;
+	}
+
+	/**
+	 * Plays a match of several games between two strategies.
+	 * 
+	 * @param games
+	 *            - Number of games to play.
+	 * @param player
+	 *            - The strategy playing the user's side. It is reset first.
+	 * @param cpu
+	 *            - The strategy playing the CPU's side. It is reset first.
+	 * @param random
+	 *            - The generator both strategies draw from.
+	 * @param tally
+	 *            - Receives the results.
+	 */
+	public void playMatch(long games, Strategy player, Strategy cpu,
+			GameRandom random, Tally tally) {
+		player.reset();
+		cpu.reset();
+		for (long game = 0; game < games; game++) {
+			playGame(player, cpu, random, tally);
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: Simulator player cpu [games] [bestOf] "
+					+ "[seed]");
+			System.out.println("Strategies: "
+					+ java.util.Arrays.toString(Strategies.NAMES));
+			return;
+		}
+		Strategy player = Strategies.create(args[0]);
+		Strategy cpu = Strategies.create(args[1]);
+		long games = args.length > 2 ? Long.parseLong(args[2]) : 1000000;
+		int bestOf = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : System
+				.nanoTime();
+
+		Tally tally = new Tally();
+		long start = System.nanoTime();
+		new Simulator(bestOf).playMatch(games, player, cpu,
+				new GameRandom(seed), tally);
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println(player.getName() + " vs " + cpu.getName()
+				+ ", best of " + bestOf + ", seed " + seed);
+		System.out.println(tally);
+		System.out.println(String.format("%.0f ms, %.1f million rounds/s",
+				elapsed / 1e6, tally.rounds * 1e3 / elapsed));
+	}
+}
@@ -0,0 +1,36 @@
+package workspace;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times the phases of starting the game, from the moment the JVM was
+ * launched, so the time to the first frame can be tracked. Each phase is
+ * printed as it is reached when Link.debug is set.
+ * 
+ * @author Mark Robinson
+ */
+final class Startup {
+
+	private static final long launched = ManagementFactory.getRuntimeMXBean()
+			.getStartTime();
+	private static long last = launched;
+
+	private Startup() {
+	}
+
+	/**
+	 * Records that a phase of starting has been reached.
+	 * 
+	 * @param phase
+	 *            - What has just been done. Ex: "first frame"
+	 */
+	static synchronized void mark(String phase) {
+		if (!Link.debug) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		System.out.println(String.format("Startup: %-20s %6d ms (+%d ms)",
+				phase, now - launched, now - last));
+		last = now;
+	}
+}
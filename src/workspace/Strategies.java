@@ -0,0 +1,199 @@
+package workspace;
+
+/**
+ * The built-in strategies for simulated matches, made by name.
+ * 
+ * @author Mark Robinson
+ */
+public final class Strategies {
+
+	/** Names accepted by create(). */
+	public static final String[] NAMES = { "random", "rock", "paper",
+			"scissor", "cycle", "copy", "beat-last", "frequency", "adaptive" };
+
+	private Strategies() {
+	}
+
+	/**
+	 * Makes a new instance of a built-in strategy.
+	 * 
+	 * @param name
+	 *            - One of NAMES.
+	 * @return - A new strategy, ready for a match.
+	 * @throws IllegalArgumentException
+	 *             - If there is no strategy with the name.
+	 */
+	public static Strategy create(String name) {
+		if (name.equals("random")) {
+			return new RandomStrategy();
+		} else if (name.equals("rock")) {
+			return new ConstantStrategy(name, Throw.ROCK.code);
+		} else if (name.equals("paper")) {
+			return new ConstantStrategy(name, Throw.PAPER.code);
+		} else if (name.equals("scissor")) {
+			return new ConstantStrategy(name, Throw.SCISSOR.code);
+		} else if (name.equals("cycle")) {
+			return new CycleStrategy();
+		} else if (name.equals("copy")) {
+			return new CopyStrategy();
+		} else if (name.equals("beat-last")) {
+			return new BeatLastStrategy();
+		} else if (name.equals("frequency")) {
+			return new FrequencyStrategy();
+		} else if (name.equals("adaptive")) {
+			return new NGramPredictor();
+		}
+		throw new IllegalArgumentException("Unknown strategy: " + name);
+	}
+
+	/**
+	 * @return - The Throw code that beats a throw code.
+	 */
+	static int beats(int code) {
+		return code % 3 + 1;
+	}
+
+	/**
+	 * Throws at random, like RPSGame.cpuChoose().
+	 */
+	static class RandomStrategy implements Strategy {
+		public String getName() {
+			return "random";
+		}
+
+		public void reset() {
+		}
+
+		public int next(GameRandom random) {
+			return random.nextThrow();
+		}
+
+		public void observe(int own, int opponent) {
+		}
+	}
+
+	/**
+	 * Always throws the same thing.
+	 */
+	static class ConstantStrategy implements Strategy {
+		private final String name;
+		private final int code;
+
+		ConstantStrategy(String name, int code) {
+			this.name = name;
+			this.code = code;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void reset() {
+		}
+
+		public int next(GameRandom random) {
+			return code;
+		}
+
+		public void observe(int own, int opponent) {
+		}
+	}
+
+	/**
+	 * Throws rock, paper, scissor, rock and so on.
+	 */
+	static class CycleStrategy implements Strategy {
+		private int last = 0;
+
+		public String getName() {
+			return "cycle";
+		}
+
+		public void reset() {
+			last = 0;
+		}
+
+		public int next(GameRandom random) {
+			return last % 3 + 1;
+		}
+
+		public void observe(int own, int opponent) {
+			last = own;
+		}
+	}
+
+	/**
+	 * Throws whatever the opponent threw last.
+	 */
+	static class CopyStrategy implements Strategy {
+		private int last = 0;
+
+		public String getName() {
+			return "copy";
+		}
+
+		public void reset() {
+			last = 0;
+		}
+
+		public int next(GameRandom random) {
+			return last == 0 ? random.nextThrow() : last;
+		}
+
+		public void observe(int own, int opponent) {
+			last = opponent;
+		}
+	}
+
+	/**
+	 * Throws whatever beats the opponent's last throw.
+	 */
+	static class BeatLastStrategy implements Strategy {
+		private int last = 0;
+
+		public String getName() {
+			return "beat-last";
+		}
+
+		public void reset() {
+			last = 0;
+		}
+
+		public int next(GameRandom random) {
+			return last == 0 ? random.nextThrow() : beats(last);
+		}
+
+		public void observe(int own, int opponent) {
+			last = opponent;
+		}
+	}
+
+	/**
+	 * Throws whatever beats the opponent's most frequent throw.
+	 */
+	static class FrequencyStrategy implements Strategy {
+		private final long[] counts = new long[4];
+
+		public String getName() {
+			return "frequency";
+		}
+
+		public void reset() {
+			counts[1] = counts[2] = counts[3] = 0;
+		}
+
+		public int next(GameRandom random) {
+			int most = random.nextThrow();
+			for (int code = 1; code <= 3; code++) {
+				if (counts[code] > counts[most]) {
+					most = code;
+				}
+			}
+			return beats(most);
+		}
+
+		public void observe(int own, int opponent) {
+			counts[opponent]++;
+		}
+	}
+}
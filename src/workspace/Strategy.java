@@ -0,0 +1,37 @@
+package workspace;
+
+/**
+ * Chooses the throws of one side in a simulated match. A strategy may learn
+ * from the rounds it is shown, so each match needs its own instance.
+ * 
+ * @author Mark Robinson
+ */
+public interface Strategy {
+
+	/**
+	 * @return - A name for reports. Ex: "random"
+	 */
+	String getName();
+
+	/**
+	 * Forgets everything seen so far, before a new match.
+	 */
+	void reset();
+
+	/**
+	 * @param random
+	 *            - The generator to draw any random choices from.
+	 * @return - The Throw code of the next throw, between 1 and 3.
+	 */
+	int next(GameRandom random);
+
+	/**
+	 * Shows the strategy the throws of the round just played.
+	 * 
+	 * @param own
+	 *            - The Throw code this strategy threw.
+	 * @param opponent
+	 *            - The Throw code the opponent threw.
+	 */
+	void observe(int own, int opponent);
+}
@@ -0,0 +1,42 @@
+package workspace;
+
+/**
+ * The three destroyers a player or the CPU can throw in a round.
+ * 
+ * @author Mark Robinson
+ */
+public enum Throw {
+	ROCK(1, "rock"), PAPER(2, "paper"), SCISSOR(3, "scissor");
+
+	/**
+	 * Code of the throw in the saved round history and in RPSGame.cpuChoose().
+	 * Code 0 is kept for a round whose throw is not known.
+	 */
+	final int code;
+
+	/** Name of the throw, as shown and as used to name its image. */
+	final String label;
+
+	private static final Throw[] BY_CODE = { null, ROCK, PAPER, SCISSOR };
+
+	private Throw(int code, String label) {
+		this.code = code;
+		this.label = label;
+	}
+
+	/**
+	 * @param code
+	 *            - A throw code between 1 and 3.
+	 * @return - The throw with the code, or null for any other code.
+	 */
+	public static Throw fromCode(int code) {
+		return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+	}
+
+	/**
+	 * @return Ex: "rock"
+	 */
+	public String toString() {
+		return label;
+	}
+}
@@ -0,0 +1,284 @@
+package workspace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays a tournament between strategies on every core. Each match is split
+ * into chunks of games that are spread over a ForkJoinPool; every chunk has
+ * its own strategies, random generator and tally, and the tallies are merged
+ * as the chunks are joined, so the workers share nothing while playing.
+ * Chunks are seeded from the tournament seed, the match and the chunk, so a
+ * tournament gives the same results however many workers play it.
+ * 
+ * Usage: Tournament [round-robin|bracket] [games] [bestOf] [seed]
+ * [strategy...]
+ * 
+ * @author Mark Robinson
+ */
+public class Tournament {
+
+	/** Games played by one task before it is split no further. */
+	static final long CHUNK = 1 << 16;
+
+	/** z for a 95% confidence interval. */
+	private static final double Z = 1.96;
+
+	/**
+	 * The games won and lost by one strategy over all its matches.
+	 */
+	static class Standing {
+		final String name;
+		long games = 0;
+		long wins = 0;
+		long losses = 0;
+
+		Standing(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return - The share of games won, between 0 and 1.
+		 */
+		double getWinRate() {
+			return games == 0 ? 0 : (double) wins / games;
+		}
+
+		/**
+		 * @return - The lower and upper bounds of the Wilson score interval of
+		 *         the win rate.
+		 */
+		double[] getConfidenceInterval() {
+			if (games == 0) {
+				return new double[] { 0, 1 };
+			}
+			double p = getWinRate();
+			double z2 = Z * Z / games;
+			double centre = (p + z2 / 2) / (1 + z2);
+			double spread = Z * Math.sqrt(p * (1 - p) / games + z2 / games / 4)
+					/ (1 + z2);
+			return new double[] { centre - spread, centre + spread };
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final Simulator simulator;
+	private final long games;
+	private final long seed;
+	private final Map<String, Standing> standings = new LinkedHashMap<String, Standing>();
+	private final Simulator.Tally total = new Simulator.Tally();
+	private int matches = 0;
+
+	/**
+	 * @param pool
+	 *            - The pool to play the games on.
+	 * @param games
+	 *            - Number of games in each match.
+	 * @param bestOf
+	 *            - Number of rounds to play in each game.
+	 * @param seed
+	 *            - Seed of every random generator used.
+	 */
+	public Tournament(ForkJoinPool pool, long games, int bestOf, long seed) {
+		this.pool = pool;
+		this.simulator = new Simulator(bestOf);
+		this.games = games;
+		this.seed = seed;
+	}
+
+	/**
+	 * Plays part of a match, splitting it in two until it is one chunk.
+	 */
+	private class MatchTask extends RecursiveTask<Simulator.Tally> {
+		private static final long serialVersionUID = 1L;
+		final String player;
+		final String cpu;
+		final int match;
+		final long from;
+		final long to;
+
+		MatchTask(String player, String cpu, int match, long from, long to) {
+			this.player = player;
+			this.cpu = cpu;
+			this.match = match;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected Simulator.Tally compute() {
+			long chunks = (to - from + CHUNK - 1) / CHUNK;
+			if (chunks <= 1) {
+				Simulator.Tally tally = new Simulator.Tally();
+				GameRandom random = new GameRandom(seed + match
+						* 0x9E3779B97F4A7C15L + from / CHUNK
+						* 0xC2B2AE3D27D4EB4FL);
+				simulator.playMatch(to - from, Strategies.create(player),
+						Strategies.create(cpu), random, tally);
+				return tally;
+			}
+			long middle = from + chunks / 2 * CHUNK;
+			MatchTask left = new MatchTask(player, cpu, match, from, middle);
+			left.fork();
+			Simulator.Tally tally = new MatchTask(player, cpu, match, middle,
+					to).compute();
+			tally.merge(left.join());
+			return tally;
+		}
+	}
+
+	/**
+	 * Plays a set of matches at the same time and records their results.
+	 * 
+	 * @param pairs
+	 *            - The player and CPU strategy of each match.
+	 * @return - The tally of each match, in the same order.
+	 */
+	List<Simulator.Tally> play(List<String[]> pairs) {
+		List<MatchTask> tasks = new ArrayList<MatchTask>();
+		for (String[] pair : pairs) {
+			MatchTask task = new MatchTask(pair[0], pair[1], matches++, 0, games);
+			pool.execute(task);
+			tasks.add(task);
+		}
+
+		List<Simulator.Tally> tallies = new ArrayList<Simulator.Tally>();
+		for (int index = 0; index < tasks.size(); index++) {
+			Simulator.Tally tally = tasks.get(index).join();
+			String[] pair = pairs.get(index);
+			record(pair[0], tally.playerGames, tally.cpuGames);
+			record(pair[1], tally.cpuGames, tally.playerGames);
+			total.merge(tally);
+			tallies.add(tally);
+		}
+		return tallies;
+	}
+
+	/**
+	 * Plays every strategy against every other, on both sides.
+	 */
+	public void roundRobin(String[] names) {
+		List<String[]> pairs = new ArrayList<String[]>();
+		for (String player : names) {
+			for (String cpu : names) {
+				if (!player.equals(cpu)) {
+					pairs.add(new String[] { player, cpu });
+				}
+			}
+		}
+		play(pairs);
+	}
+
+	/**
+	 * Plays a knockout: strategies are paired in order, the winner of each
+	 * match goes through and an unpaired strategy goes through untouched.
+	 * 
+	 * @return - The name of the winner.
+	 */
+	public String bracket(String[] names) {
+		List<String> left = new ArrayList<String>(Arrays.asList(names));
+		while (left.size() > 1) {
+			List<String[]> pairs = new ArrayList<String[]>();
+			for (int index = 0; index + 1 < left.size(); index += 2) {
+				pairs.add(new String[] { left.get(index), left.get(index + 1) });
+			}
+			List<Simulator.Tally> tallies = play(pairs);
+
+			List<String> next = new ArrayList<String>();
+			for (int index = 0; index < pairs.size(); index++) {
+				String[] pair = pairs.get(index);
+				Simulator.Tally tally = tallies.get(index);
+				// A match of only abandoned games goes to the player's side.
+				String winner = tally.playerGames >= tally.cpuGames ? pair[0]
+						: pair[1];
+				System.out.println(String.format("%s vs %s: %s, %d to %d",
+						pair[0], pair[1], winner, tally.playerGames,
+						tally.cpuGames));
+				next.add(winner);
+			}
+			if (left.size() % 2 == 1) {
+				next.add(left.get(left.size() - 1));
+			}
+			left = next;
+		}
+		return left.get(0);
+	}
+
+	/**
+	 * Adds the results of one side of a match to a strategy's standing.
+	 */
+	private void record(String name, long wins, long losses) {
+		Standing standing = standings.get(name);
+		if (standing == null) {
+			standing = new Standing(name);
+			standings.put(name, standing);
+		}
+		standing.games += wins + losses;
+		standing.wins += wins;
+		standing.losses += losses;
+	}
+
+	/**
+	 * Prints each strategy's win rate, best first, with its 95% confidence
+	 * interval.
+	 */
+	public void printStandings() {
+		List<Standing> sorted = new ArrayList<Standing>(standings.values());
+		Collections.sort(sorted, new Comparator<Standing>() {
+			public int compare(Standing a, Standing b) {
+				return Double.compare(b.getWinRate(), a.getWinRate());
+			}
+		});
+		System.out.println(String.format("%-12s %12s %9s  %s", "Strategy",
+				"Games", "Win rate", "95% interval"));
+		for (Standing standing : sorted) {
+			double[] interval = standing.getConfidenceInterval();
+			System.out.println(String.format("%-12s %12d %8.3f%%  %.3f%% - %.3f%%",
+					standing.name, standing.games, standing.getWinRate() * 100,
+					interval[0] * 100, interval[1] * 100));
+		}
+	}
+
+	public static void main(String[] args) {
+		String mode = args.length > 0 ? args[0] : "round-robin";
+		long games = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+		int bestOf = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : System
+				.nanoTime();
+		String[] names = args.length > 4 ? Arrays.copyOfRange(args, 4,
+				args.length) : Strategies.NAMES;
+		for (String name : names) {
+			Strategies.create(name);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool();
+		Tournament tournament = new Tournament(pool, games, bestOf, seed);
+		System.out.println(String.format(
+				"%s of %d strategies, %d games a match, best of %d, seed %d, "
+						+ "%d workers", mode, names.length, games, bestOf, seed,
+				pool.getParallelism()));
+
+		long start = System.nanoTime();
+		if (mode.equals("bracket")) {
+			System.out.println("Winner: " + tournament.bracket(names));
+		} else {
+			tournament.roundRobin(names);
+		}
+		long elapsed = System.nanoTime() - start;
+		pool.shutdown();
+
+		tournament.printStandings();
+		System.out.println(tournament.total);
+		System.out.println(String.format(
+				"%d matches in %.0f ms: %.1f million games/s, "
+						+ "%.1f million rounds/s", tournament.matches,
+				elapsed / 1e6, tournament.total.games * 1e3 / elapsed,
+				tournament.total.rounds * 1e3 / elapsed));
+	}
+}
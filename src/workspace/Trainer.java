@@ -0,0 +1,284 @@
+package workspace;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Learns the adaptive CPU's predictor from every round saved, and writes it
+ * to the model file that XMLStore reads when the game starts. Games are read in
+ * batches that are spread over a ForkJoinPool; every batch learns into its own
+ * predictor and the predictors are merged as the batches are joined. A binary
+ * save is scanned through a read-only mapping and an xml save is streamed, so
+ * neither is held on the heap. Run it while the game is closed, as the game
+ * saves its own predictor over the model file.
+ * 
+ * Usage: Trainer [saved file] [model file]
+ * 
+ * @author Mark Robinson
+ */
+public class Trainer {
+
+	/** Games learned from by one task. */
+	static final int BATCH = 4096;
+
+	/** Milliseconds between two progress reports. */
+	static final long REPORT_INTERVAL = 1000;
+
+	private final ForkJoinPool pool;
+	private final AtomicLong games = new AtomicLong();
+	private final AtomicLong rounds = new AtomicLong();
+	private long started;
+	private long lastReport;
+
+	/**
+	 * @param pool
+	 *            - The pool to learn on.
+	 */
+	public Trainer(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Teaches a predictor every round a visitor is shown.
+	 */
+	private static class Learner implements GameModel.RoundVisitor {
+		final NGramPredictor predictor = new NGramPredictor();
+		long rounds = 0;
+
+		public void round(int round, int playerThrow, int cpuThrow) {
+			// Rounds saved by an older version may hold no throws.
+			if (playerThrow != 0 && cpuThrow != 0) {
+				predictor.observe(cpuThrow, playerThrow);
+				rounds++;
+			}
+		}
+	}
+
+	/**
+	 * Learns from a range of games in a binary save, splitting it in two until
+	 * it is one batch.
+	 */
+	private class ScanTask extends RecursiveTask<NGramPredictor> {
+		private static final long serialVersionUID = 1L;
+		final GameFile.Scanner scanner;
+		final int from;
+		final int to;
+
+		ScanTask(GameFile.Scanner scanner, int from, int to) {
+			this.scanner = scanner;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected NGramPredictor compute() {
+			if (to - from <= BATCH) {
+				Learner learner = new Learner();
+				try {
+					for (int row = from; row < to; row++) {
+						scanner.forEachRound(row, learner);
+					}
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				games.addAndGet(to - from);
+				rounds.addAndGet(learner.rounds);
+				return learner.predictor;
+			}
+			int middle = (from + to) >>> 1;
+			ScanTask left = new ScanTask(scanner, from, middle);
+			left.fork();
+			NGramPredictor predictor = new ScanTask(scanner, middle, to)
+					.compute();
+			predictor.merge(left.join());
+			return predictor;
+		}
+	}
+
+	/**
+	 * Learns from a batch of games read from an xml save, each given by its
+	 * "rounds" attribute.
+	 */
+	private class BatchTask extends RecursiveTask<NGramPredictor> {
+		private static final long serialVersionUID = 1L;
+		final List<String> batch;
+
+		BatchTask(List<String> batch) {
+			this.batch = batch;
+		}
+
+		protected NGramPredictor compute() {
+			Learner learner = new Learner();
+			for (String played : batch) {
+				for (int round = 0; round < played.length(); round++) {
+					int packed = Math.max(0,
+							Character.digit(played.charAt(round), 16));
+					learner.round(round, packed >> 2, packed & 3);
+				}
+			}
+			games.addAndGet(batch.size());
+			rounds.addAndGet(learner.rounds);
+			return learner.predictor;
+		}
+	}
+
+	/**
+	 * Learns from every game in a binary save.
+	 * 
+	 * @param file
+	 *            - An "RPS_Data.bin".
+	 * @param roundsFile
+	 *            - Its "RPS_Data.rounds".
+	 */
+	public NGramPredictor trainBinary(File file, File roundsFile)
+			throws IOException, InterruptedException {
+		GameFile.Scanner scanner = new GameFile.Scanner(file, roundsFile);
+		ScanTask task = new ScanTask(scanner, 0, scanner.size());
+		pool.execute(task);
+		while (true) {
+			try {
+				NGramPredictor predictor = task.get(REPORT_INTERVAL,
+						TimeUnit.MILLISECONDS);
+				predictor.setSequence(scanner.getSequence());
+				return predictor;
+			} catch (TimeoutException e) {
+				report(scanner.size());
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Learns from every game in an xml save, reading it one batch at a time.
+	 * At most two batches per worker are held at once.
+	 * 
+	 * @param xml
+	 *            - An "RPS_Data.xml", or a file written by XMLStore.exportTo().
+	 */
+	public NGramPredictor trainXML(File xml) throws IOException,
+			XMLStreamException {
+		NGramPredictor predictor = new NGramPredictor();
+		ArrayDeque<BatchTask> running = new ArrayDeque<BatchTask>();
+		List<String> batch = new ArrayList<String>(BATCH);
+		long sequence = 0;
+
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		FileInputStream file = new FileInputStream(xml);
+		XMLStreamReader in = factory.createXMLStreamReader(
+				new BufferedInputStream(file, 64 * 1024), "UTF-8");
+		try {
+			while (in.hasNext()) {
+				if (in.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+				String element = in.getLocalName();
+				if (element.equals("game")) {
+					String played = in.getAttributeValue(null, "rounds");
+					batch.add(played == null ? "" : played);
+					if (batch.size() == BATCH) {
+						BatchTask task = new BatchTask(batch);
+						pool.execute(task);
+						running.add(task);
+						batch = new ArrayList<String>(BATCH);
+						if (running.size() > pool.getParallelism() * 2) {
+							predictor.merge(running.remove().join());
+						}
+						report(-1);
+					}
+				} else if (element.equals("globalSettings")) {
+					String value = in.getAttributeValue(null, "journalSequence");
+					if (value != null) {
+						sequence = Long.parseLong(value);
+					}
+				}
+			}
+		} finally {
+			in.close();
+			file.close();
+		}
+
+		running.add(new BatchTask(batch));
+		pool.execute(running.getLast());
+		while (!running.isEmpty()) {
+			predictor.merge(running.remove().join());
+		}
+		predictor.setSequence(sequence);
+		return predictor;
+	}
+
+	/**
+	 * Prints how far learning has got, at most once per REPORT_INTERVAL.
+	 * 
+	 * @param total
+	 *            - The number of games to learn from, or -1 if not known.
+	 */
+	private void report(int total) {
+		long now = System.nanoTime();
+		if (now - lastReport < REPORT_INTERVAL * 1000000) {
+			return;
+		}
+		lastReport = now;
+		System.out.println(String.format("%d%s games, %d rounds, "
+				+ "%.1f million rounds/s", games.get(), total < 0 ? "" : " of "
+				+ total, rounds.get(), rounds.get() * 1e3 / (now - started)));
+	}
+
+	public static void main(String[] args) throws Exception {
+		String dir = System.getProperty("user.dir");
+		File saved = args.length > 0 ? new File(args[0]) : new File(dir
+				+ "\\RPS_Data.bin");
+		if (args.length == 0 && !saved.exists()) {
+			saved = new File(dir + "\\RPS_Data.xml");
+		}
+		File model = args.length > 1 ? new File(args[1]) : new File(dir
+				+ "\\RPS_Data.model");
+
+		ForkJoinPool pool = new ForkJoinPool();
+		Trainer trainer = new Trainer(pool);
+		System.out.println("Learning from " + saved + " with "
+				+ pool.getParallelism() + " workers");
+
+		trainer.started = System.nanoTime();
+		trainer.lastReport = trainer.started;
+		NGramPredictor predictor;
+		if (saved.getName().endsWith(".xml")) {
+			predictor = trainer.trainXML(saved);
+		} else {
+			String path = saved.getPath();
+			File roundsFile = new File(path.endsWith(".bin") ? path.substring(
+					0, path.length() - 4) + ".rounds" : path + ".rounds");
+			predictor = trainer.trainBinary(saved, roundsFile);
+		}
+		long elapsed = System.nanoTime() - trainer.started;
+		pool.shutdown();
+
+		predictor.save(model);
+		System.out.println(String.format("%d games, %d rounds in %.0f ms: "
+				+ "%.1f million rounds/s", trainer.games.get(),
+				trainer.rounds.get(), elapsed / 1e6, trainer.rounds.get() * 1e3
+						/ elapsed));
+		for (int order = 0; order <= NGramPredictor.ORDER; order++) {
+			System.out.println(String.format("Order %d guessed %.1f%% right",
+					order, predictor.getAccuracy(order) * 100));
+		}
+		System.out.println("Wrote " + model + " (" + model.length()
+				+ " bytes)");
+	}
+}
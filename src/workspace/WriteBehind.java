@@ -0,0 +1,150 @@
+package workspace;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Saves the local data store in the background, but only after it has been
+ * changed. Every change made within one flush window is merged into a single
+ * write, so an idle session never touches the disk and a busy session writes
+ * at most once per window.
+ * 
+ * @author Mark Robinson
+ */
+public class WriteBehind {
+
+	private final XMLStore store;
+	private final long window;
+	private final Timer timer = new Timer("RPS Data Save", true);
+	private final Object flushLock = new Object();
+
+	private long version = 0;
+	private long savedVersion = 0;
+	private boolean scheduled = false;
+	private long lastFlushTime = 0;
+
+	private long flushes = 0;
+	private long failedFlushes = 0;
+	private long lastFlushNanos = 0;
+	private long maxFlushNanos = 0;
+	private long totalFlushNanos = 0;
+	private long lastBytesWritten = 0;
+	private long totalBytesWritten = 0;
+
+	/**
+	 * Prepares a write-behind saver for a data store.
+	 * 
+	 * @param store
+	 *            - The store that writes its data to disk when flushed.
+	 * @param window
+	 *            - The minimum number of milliseconds between two writes.
+	 */
+	public WriteBehind(XMLStore store, long window) {
+		this.store = store;
+		this.window = window;
+	}
+
+	/**
+	 * Records that the data has changed and schedules a flush at the end of
+	 * the current window if one is not already pending.
+	 */
+	public synchronized void markDirty() {
+		version++;
+		if (!scheduled) {
+			schedule();
+		}
+	}
+
+	/**
+	 * @return - True if there are changes that have not been written yet.
+	 */
+	public synchronized boolean isDirty() {
+		return version != savedVersion;
+	}
+
+	/**
+	 * Writes the data to disk right away if it has changed since the last
+	 * write. Does nothing when the data is clean.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			long target;
+			synchronized (this) {
+				target = version;
+				if (target == savedVersion) {
+					return;
+				}
+			}
+
+			long start = System.nanoTime();
+			long bytes = store.write();
+			long elapsed = System.nanoTime() - start;
+
+			synchronized (this) {
+				lastFlushTime = System.currentTimeMillis();
+				if (bytes < 0) {
+					failedFlushes++;
+					return;
+				}
+				savedVersion = target;
+				flushes++;
+				lastFlushNanos = elapsed;
+				maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+				totalFlushNanos += elapsed;
+				lastBytesWritten = bytes;
+				totalBytesWritten += bytes;
+			}
+		}
+	}
+
+	/**
+	 * Stops the background timer after writing any pending changes.
+	 */
+	public void close() {
+		timer.cancel();
+		flush();
+	}
+
+	/**
+	 * Makes a short report of the writes done so far.
+	 * 
+	 * @return Ex: "3 flushes (0 failed), 5120 bytes written, last 1.20 ms,
+	 *         average 1.41 ms, max 2.03 ms"
+	 */
+	public synchronized String getReport() {
+		return String.format(
+				"%d flushes (%d failed), %d bytes written (last %d), "
+						+ "last %.2f ms, average %.2f ms, max %.2f ms",
+				flushes, failedFlushes, totalBytesWritten, lastBytesWritten,
+				lastFlushNanos / 1e6, flushes == 0 ? 0.0
+						: totalFlushNanos / 1e6 / flushes, maxFlushNanos / 1e6);
+	}
+
+	/**
+	 * Schedules a flush for the end of the current window. Must be called
+	 * while holding this object's lock.
+	 */
+	private void schedule() {
+		scheduled = true;
+		long delay = Math.max(0,
+				lastFlushTime + window - System.currentTimeMillis());
+		try {
+			timer.schedule(new TimerTask() {
+				public void run() {
+					flush();
+					synchronized (WriteBehind.this) {
+						scheduled = false;
+						// Changes made during the write, or a failed write, are
+						// picked up by the next window.
+						if (version != savedVersion) {
+							schedule();
+						}
+					}
+				}
+			}, delay);
+		} catch (IllegalStateException e) {
+			// The timer has been closed; close() writes whatever is left.
+			scheduled = false;
+		}
+	}
+}
@@ -1,20 +1,40 @@
 package workspace;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Locale;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import com.sun.org.apache.xml.internal.serialize.OutputFormat;
-import com.sun.org.apache.xml.internal.serialize.XMLSerializer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * Links my game to save and load local xml data from "RPS_Data.xml" in the user
- * working directory.
+ * working directory. The games themselves are held in a GameModel; the xml
+ * file is only read when the data is loaded and written when it is saved.
+ * Large profiles can be saved to the binary "RPS_Data.bin" instead, in which
+ * case xml is only used to import and export games.
  * 
  * @author Mark Robinson
  * 
@@ -24,72 +44,442 @@ public class XMLStore {
 	File xmlFile = new File(System.getProperty("user.dir") + "\\RPS_Data.xml");
 
 	/**
-	 * Makes a string representation of a game's statistics in xml form.
+	 * The binary save file, used instead of xmlFile when "rps.format" is
+	 * "binary", or when it is not set and the binary file already exists.
+	 */
+	GameFile gameFile = new GameFile(new File(System.getProperty("user.dir")
+			+ "\\RPS_Data.bin"), new File(System.getProperty("user.dir")
+			+ "\\RPS_Data.rounds"));
+	boolean binary = System.getProperty("rps.format") == null ? gameFile
+			.exists() : System.getProperty("rps.format").equals("binary");
+
+	/** Whether names freed by deleting games are given to new games. */
+	final boolean reuseNames = Boolean.getBoolean("rps.reuseNames");
+
+	/**
+	 * The wall clock and System.nanoTime() when the store was made. Changes
+	 * are stamped by adding the nanoTime() elapsed since to the wall clock
+	 * time, so a step in the wall clock during a session, such as from NTP,
+	 * never makes a game end before it started.
+	 */
+	private final long clockMillis = System.currentTimeMillis();
+	private final long clockNanos = System.nanoTime();
+
+	/**
+	 * True when the next binary save must rewrite every game rather than only
+	 * the games changed since the last save.
+	 */
+	private boolean rewriteAll = true;
+
+	/**
+	 * The settings and every saved game. Change it only through the methods of
+	 * this store so that each change is journaled and saved.
+	 */
+	GameModel model = new GameModel();
+
+	/**
+	 * The totals as they were after the last change, or null until they are
+	 * next read. Read without the lock, so the stats screen never waits on a
+	 * save.
+	 */
+	private volatile GameModel.Statistics statistics = null;
+
+	/**
+	 * Writes changes to the save file at most once per "rps.flushWindow"
+	 * milliseconds (default 1000), and only when something has changed.
+	 */
+	WriteBehind writeBehind = new WriteBehind(this, Long.getLong(
+			"rps.flushWindow", 1000));
+
+	/**
+	 * Records that the model has been changed so it is saved at the end of the
+	 * current flush window. Call after every change made to the model.
+	 */
+	public void markDirty() {
+		writeBehind.markDirty();
+	}
+
+	/**
+	 * Records every change made through this store. It is replayed over the
+	 * save file when the data is loaded and emptied each time it is written.
+	 */
+	RoundJournal journal = new RoundJournal(new File(
+			System.getProperty("user.dir") + "\\RPS_Data.journal"));
+
+	/**
+	 * Learns the player's habits from every round played, for the adaptive
+	 * CPU. It is saved to predictorFile with the games and holds the journal
+	 * sequence of the last round it learned, so replaying the journal teaches
+	 * it each round once.
+	 */
+	NGramPredictor predictor = new NGramPredictor();
+	File predictorFile = new File(System.getProperty("user.dir")
+			+ "\\RPS_Data.model");
+	private boolean predictorChanged = false;
+
+	/**
+	 * Receives the progress of loading the saved data.
+	 */
+	public interface LoadProgress {
+		/**
+		 * @param read
+		 *            - Bytes of the save file read so far.
+		 * @param total
+		 *            - Length of the save file in bytes.
+		 * @param games
+		 *            - Number of games loaded so far.
+		 * @param done
+		 *            - True once loading has finished and the data can be used.
+		 */
+		void update(long read, long total, int games, boolean done);
+	}
+
+	/** Number of games loaded between two progress updates. */
+	static final int PROGRESS_GAMES = 4096;
+
+	/**
+	 * The row found for Link.activeGame the last time it was looked up.
+	 */
+	private String activeGameName = null;
+	private int activeGameRow = -1;
+
+	/**
+	 * Records the throws of a round played in the active game, and who won it.
+	 * 
+	 * @param player
+	 *            - The throw of the player.
+	 * @param cpu
+	 *            - The throw of the CPU.
+	 */
+	public synchronized void recordRound(Throw player, Throw cpu) {
+		change(RoundJournal.ROUND, Integer.parseInt(Link.activeGame),
+				RoundResolver.result(player, cpu),
+				RoundResolver.round(player, cpu));
+	}
+
+	/**
+	 * Chooses the CPU's throw by beating the throw the player is predicted to
+	 * make next.
+	 * 
+	 * @param random
+	 *            - The generator to choose with when nothing can be predicted.
+	 * @return - The Throw code of the CPU's throw.
+	 */
+	public synchronized int chooseCpuThrow(GameRandom random) {
+		return predictor.next(random);
+	}
+
+	/**
+	 * Moves the active game on to its next round.
+	 */
+	public synchronized void advanceRound() {
+		change(RoundJournal.NEXT_ROUND, Integer.parseInt(Link.activeGame), 0, 0);
+	}
+
+	/**
+	 * Adds a tie breaker round to the active game.
+	 */
+	public synchronized void extendActiveGame() {
+		change(RoundJournal.EXTEND, Integer.parseInt(Link.activeGame), 0, 0);
+	}
+
+	/**
+	 * Ends the active game, setting its end time and its winner.
+	 */
+	public synchronized void endActiveGame() {
+		change(RoundJournal.END, Integer.parseInt(Link.activeGame), 0, 0);
+	}
+
+	/**
+	 * Deletes a game in constant time. Every other game keeps its name and its
+	 * row until compact() is called.
+	 * 
+	 * @param gameName
+	 *            - Unique number of the game to delete.
+	 */
+	public synchronized void deleteGame(int gameName) {
+		change(RoundJournal.DELETE, gameName, 0, 0);
+	}
+
+	/**
+	 * Deletes many games at once, each in constant time.
+	 * 
+	 * @param gameNames
+	 *            - Unique numbers of the games to delete.
+	 * @return - The number of games deleted.
+	 */
+	public synchronized int deleteGames(int[] gameNames) {
+		int deleted = 0;
+		for (int gameName : gameNames) {
+			if (model.find(gameName) >= 0) {
+				change(RoundJournal.DELETE, gameName, 0, 0);
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Removes the rows of deleted games once they are a quarter of all rows,
+	 * which moves the games after them, so the next save rewrites every game.
+	 * 
+	 * @return - True if rows were removed.
+	 */
+	public synchronized boolean compact() {
+		if (model.deletedCount() == 0
+				|| model.deletedCount() * 4 < model.size()) {
+			return false;
+		}
+		model.compact();
+		activeGameName = null;
+		markDirty();
+		return true;
+	}
+
+	/**
+	 * Sets the number of rounds played in new games.
+	 * 
+	 * @param bestOf
+	 *            - Number of rounds to play before determining a winner.
+	 */
+	public synchronized void setBestOf(int bestOf) {
+		change(RoundJournal.BEST_OF, 0, 0, bestOf);
+	}
+
+	/**
+	 * Writes a change to the journal, then applies it to the model.
+	 */
+	private void change(int type, int game, int arg, int value) {
+		// Read at the change, so each change carries its own time.
+		long time = currentTime();
+		long sequence = journal.append(type, game, arg, time, value);
+		apply(type, game, arg, time, value, sequence);
+		markDirty();
+	}
+
+	/**
+	 * @return - The time now in milliseconds since the epoch, read from the
+	 *         monotonic clock.
+	 */
+	long currentTime() {
+		return clockMillis + (System.nanoTime() - clockNanos) / 1000000;
+	}
+
+	/**
+	 * Applies one change to the model. Every change to the saved games goes
+	 * through here, both while playing and while replaying the journal.
+	 * 
+	 * @param type
+	 *            - One of the RoundJournal record types.
+	 * @param game
+	 *            - Unique number of the game changed.
+	 * @param arg
+	 *            - The round result for ROUND changes.
+	 * @param time
+	 *            - Time of the change in milliseconds since the epoch.
+	 * @param value
+	 *            - The number of rounds to play for CREATE and BEST_OF changes,
+	 *            or the packed throws for ROUND changes.
+	 * @param sequence
+	 *            - The journal sequence number of the change, or -1 if it
+	 *            could not be journaled.
+	 */
+	void apply(int type, int game, int arg, long time, int value,
+			long sequence) {
+		statistics = null;
+		if (type == RoundJournal.CREATE) {
+			model.totalUserGamesInitiated++;
+			model.setSequence(model.add(game, time, value), sequence);
+			activeGameName = null;
+			return;
+		} else if (type == RoundJournal.BEST_OF) {
+			model.bestOf = value;
+			return;
+		}
+
+		int row = model.find(game);
+		if (row < 0) {
+			return;
+		}
+
+		// A game record in the binary file can be saved ahead of the header
+		// holding the totals, in which case only the totals are replayed.
+		boolean saved = sequence > 0 && sequence <= model.getSequence(row);
+		if (!saved && sequence > 0) {
+			model.setSequence(row, sequence);
+		}
+
+		if (type == RoundJournal.ROUND) {
+			if (sequence <= 0 || sequence > predictor.getSequence()) {
+				predictor.observe(value & 3, value >> 2);
+				predictor.setSequence(Math.max(sequence,
+						predictor.getSequence()));
+				predictorChanged = true;
+			}
+			if (!saved) {
+				model.addRound(row, value >> 2, value);
+			}
+			if (arg == 0) {
+				model.totalUserRoundWins++;
+				if (!saved) {
+					model.setPlayerWins(row, model.getPlayerWins(row) + 1);
+				}
+			} else if (arg == 1) {
+				model.totalUserRoundLoses++;
+				if (!saved) {
+					model.setPlayerLoses(row, model.getPlayerLoses(row) + 1);
+				}
+			} else if (arg == 2) {
+				// Ties do not count towards the rounds played.
+				model.totalUserRoundTies++;
+				if (!saved) {
+					model.setPlayerTies(row, model.getPlayerTies(row) + 1);
+					model.setCurrentRound(row, model.getCurrentRound(row) - 1);
+				}
+			}
+		} else if (type == RoundJournal.NEXT_ROUND) {
+			if (!saved) {
+				model.setCurrentRound(row, model.getCurrentRound(row) + 1);
+			}
+		} else if (type == RoundJournal.EXTEND) {
+			if (!saved) {
+				model.setBestOf(row, model.getBestOf(row) + 1);
+			}
+		} else if (type == RoundJournal.END) {
+			if (!saved) {
+				model.setEnded(row, time);
+				if (determineGameWinner(row) == RoundResolver.GAME_PLAYER) {
+					model.setWinner(row, GameModel.PLAYER);
+				} else {
+					model.setWinner(row, GameModel.CPU);
+				}
+			}
+			if (model.getWinner(row) == GameModel.PLAYER) {
+				model.totalUserGameWins++;
+			} else {
+				model.totalUserGameLoses++;
+			}
+		} else if (type == RoundJournal.DELETE) {
+			model.delete(row);
+			model.freeName(game);
+			activeGameName = null;
+		}
+	}
+
+	/**
+	 * Reads back the journal records written since the data was last saved.
+	 */
+	private void replayJournal() {
+		int replayed = journal.replay(model.journalSequence,
+				new RoundJournal.Handler() {
+					public void apply(int type, int game, int arg, long time,
+							int value, long sequence) {
+						XMLStore.this.apply(type, game, arg, time, value,
+								sequence);
+					}
+				});
+
+		if (replayed > 0) {
+			markDirty();
+		}
+	}
+
+	/**
+	 * Makes a string representation of a game's statistics.
 	 * 
 	 * @param gameName
-	 *            - A unique name assigned to each game as an xml attribute
+	 *            - A unique name assigned to each game
 	 * @return - A string representing a game's statistics
 	 */
 	public String getGameStatistics(int gameName) {
 		String statistics = "";
 
-		Element game = getGameElement(gameName);
+		int game = model.find(gameName);
 
-		if (game != null) {
+		if (game >= 0) {
 
-			statistics += "Best Of: " + game.getAttribute("bestOf") + " \n";
-			statistics += "Round Wins: " + game.getAttribute("playerWins")
+			statistics += "Best Of: " + model.getBestOf(game) + " \n";
+			statistics += "Round Wins: " + model.getPlayerWins(game) + " \n";
+			statistics += "Round Ties: " + model.getPlayerTies(game) + " \n";
+			statistics += "Round Losses: " + model.getPlayerLoses(game)
 					+ " \n";
-			statistics += "Round Ties: " + game.getAttribute("playerTies")
+			statistics += "Started: " + formatTime(model.getStarted(game))
 					+ " \n";
-			statistics += "Round Losses: " + game.getAttribute("playerLoses")
+			statistics += "Ended: " + formatTime(model.getEnded(game))
 					+ " \n";
-			statistics += "Started: " + game.getAttribute("started") + " \n";
-			statistics += "Ended: " + game.getAttribute("ended") + " \n";
-			statistics += "Game Winner: " + game.getAttribute("gameWinner");
+			statistics += "Game Winner: "
+					+ formatWinner(model.getWinner(game));
 
 		}
 		return statistics;
 	}
 
 	/**
-	 * Makes an array of statistics in String from, from the global xml element
+	 * Hands every round played in a game to a visitor, in the order they were
+	 * played.
+	 * 
+	 * @param gameName
+	 *            - A unique name assigned to each game
+	 * @param visitor
+	 *            - Receives the throws of each round.
+	 */
+	public synchronized void forEachRound(int gameName,
+			GameModel.RoundVisitor visitor) {
+		int game = model.find(gameName);
+		if (game >= 0) {
+			model.forEachRound(game, visitor);
+		}
+	}
+
+	/**
+	 * Makes an array of statistics in String from, from the global settings
 	 * 
 	 * @return An array of formatted Strings {Games Started, Games Won, Games
 	 *         Lost, Games Pending, Rounds Started, Rounds Won, Rounds Tied,
 	 *         Rounds Lost}
 	 */
 	public String[] getSavedStatistics() {
+		return formatStatistics(getStatistics());
+	}
+
+	/**
+	 * Reads the totals of every game played. They are counted as each change
+	 * is applied, so this only copies them, once per change at most.
+	 * 
+	 * @return - The totals as they are now.
+	 */
+	public GameModel.Statistics getStatistics() {
+		GameModel.Statistics current = statistics;
+		if (current == null) {
+			synchronized (this) {
+				current = statistics;
+				if (current == null) {
+					current = model.getStatistics();
+					statistics = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Makes an array of statistics in String form.
+	 * 
+	 * @return An array of formatted Strings {Games Started, Games Won, Games
+	 *         Lost, Games Pending, Rounds Started, Rounds Won, Rounds Tied,
+	 *         Rounds Lost}
+	 */
+	public static String[] formatStatistics(GameModel.Statistics totals) {
 		String[] statistics = new String[8];
-		Element globalSettings = (Element) Link.doc.getElementsByTagName(
-				"globalSettings").item(0);
-		int roundsStarted = Integer.parseInt(globalSettings
-				.getAttribute("totalUserRoundLoses"))
-				+ Integer.parseInt(globalSettings
-						.getAttribute("totalUserRoundWins"))
-				+ Integer.parseInt(globalSettings
-						.getAttribute("totalUserRoundTies"));
-		int gamesPending = Integer.parseInt(globalSettings
-				.getAttribute("totalUserGamesInitiated"))
-				- (Integer.parseInt(globalSettings
-						.getAttribute("totalUserGameWins")) + Integer
-						.parseInt(globalSettings
-								.getAttribute("totalUserGameLoses")));
-
-		statistics[0] = "Games Started: "
-				+ globalSettings.getAttribute("totalUserGamesInitiated");
-		statistics[1] = "Games Won: "
-				+ globalSettings.getAttribute("totalUserGameWins");
-		statistics[2] = "Games Lost: "
-				+ globalSettings.getAttribute("totalUserGameLoses");
-		statistics[3] = "Games Pending: " + gamesPending;
-		statistics[4] = "Rounds Started: " + roundsStarted;
-		statistics[5] = "Rounds Won: "
-				+ globalSettings.getAttribute("totalUserRoundWins");
-		statistics[6] = "Rounds Tied: "
-				+ globalSettings.getAttribute("totalUserRoundTies");
-		statistics[7] = "Rounds Lost: "
-				+ globalSettings.getAttribute("totalUserRoundLoses");
+
+		statistics[0] = "Games Started: " + totals.gamesStarted;
+		statistics[1] = "Games Won: " + totals.gamesWon;
+		statistics[2] = "Games Lost: " + totals.gamesLost;
+		statistics[3] = "Games Pending: " + totals.getGamesPending();
+		statistics[4] = "Rounds Started: " + totals.getRoundsStarted();
+		statistics[5] = "Rounds Won: " + totals.roundsWon;
+		statistics[6] = "Rounds Tied: " + totals.roundsTied;
+		statistics[7] = "Rounds Lost: " + totals.roundsLost;
 
 		return statistics;
 	}
@@ -118,22 +508,20 @@ public class XMLStore {
 	}
 
 	/**
-	 * Converts an array of game Elements into a formatted String list
+	 * Converts an array of game names into a formatted String list
 	 * 
-	 * @param An
-	 *            array of game Elements for conversion
+	 * @param list
+	 *            - An array of game names for conversion
 	 * @return An array of formatted Strings
 	 */
-	public String[] convertGamesListForDisplay(Element[] list) {
+	public String[] convertGamesListForDisplay(int[] list) {
 		String[] gamesWinners = new String[list.length];
 
 		for (int index = 0; index < list.length; index++) {
-			if (list[index] != null) {
-				Element game = list[index];
-
-				gamesWinners[index] = String.format("Game %s - %s Victory",
-						game.getAttribute("name"),
-						game.getAttribute("gameWinner"));
+			int game = model.find(list[index]);
+			if (game >= 0) {
+				gamesWinners[index] = String.format("Game %d - %s Victory",
+						list[index], formatWinner(model.getWinner(game)));
 			}
 		}
 
@@ -143,20 +531,15 @@ public class XMLStore {
 	/**
 	 * Creates a list of games pending completion.
 	 * 
-	 * @return Array of saved games in Element form.
+	 * @return Array of the names of saved games.
 	 */
-	public Element[] getSavedGamesList() {
-		Element[] list = new Element[Link.doc.getDocumentElement()
-				.getElementsByTagName("game").getLength()];
+	public synchronized int[] getSavedGamesList() {
+		int[] list = new int[model.pendingCount()];
 		int savedIndex = 0;
-		for (int index = 0; index < Link.doc.getDocumentElement()
-				.getElementsByTagName("game").getLength(); index++) {
-
-			if (Link.doc.getDocumentElement().getElementsByTagName("game")
-					.item(index).getAttributes().getNamedItem("gameWinner")
-					.getTextContent().equals("Pending")) {
-				list[savedIndex] = (Element) Link.doc.getDocumentElement()
-						.getElementsByTagName("game").item(index);
+		for (int game = 0; game < model.size(); game++) {
+			if (model.getWinner(game) == GameModel.PENDING
+					&& !model.isDeleted(game)) {
+				list[savedIndex] = model.getName(game);
 				savedIndex++;
 			}
 		}
@@ -164,164 +547,216 @@ public class XMLStore {
 	}
 
 	/**
-	 * Attempts to find a game xml element with a 'name' attribute equal to the
-	 * 'gameName' parameter.
+	 * Creates a list of all created games.
 	 * 
-	 * @param gameName
-	 *            - Unique number to find an xml Element
-	 * @return - If a matching xml Element is found, it is returned as an xml
-	 *         element. Otherwise, null is returned.
+	 * @return Array of the names of created games, in the order they were
+	 *         created.
 	 */
-	public Element getGameElement(int gameName) {
-		for (int index = 0; index < Link.doc.getDocumentElement()
-				.getElementsByTagName("game").getLength(); index++) {
-			Element game = (Element) Link.doc.getDocumentElement()
-					.getElementsByTagName("game").item(index);
-			if (game.getAttribute("name").equals(String.valueOf(gameName))) {
-				return game;
+	public synchronized int[] getGamesList() {
+		int[] list = new int[model.count()];
+		int index = 0;
+		for (int game = 0; game < model.size(); game++) {
+			if (!model.isDeleted(game)) {
+				list[index++] = model.getName(game);
 			}
 		}
-		return null;
+		return list;
 	}
 
 	/**
-	 * Creates a list of all created games.
-	 * 
-	 * @return Array of created games in Element form.
+	 * A page of a list of games, formatted for display.
 	 */
-	public Element[] getGamesList() {
-		Element[] list = new Element[Link.doc.getDocumentElement()
-				.getElementsByTagName("game").getLength()];
-		for (int index = 0; index < Link.doc.getDocumentElement()
-				.getElementsByTagName("game").getLength(); index++) {
-			list[index] = (Element) Link.doc.getDocumentElement()
-					.getElementsByTagName("game").item(index);
+	public static class GamePage {
+		/** The games as shown. Ex: "Game 12 - Pending Victory" */
+		public final String[] rows;
+		/** The names of the games shown. */
+		public final int[] names;
+		/** The model row to start looking for the next page from. */
+		public final int nextRow;
+		/** The layout of the model rows, see GameModel.getLayout(). */
+		public final int layout;
+
+		GamePage(String[] rows, int[] names, int nextRow, int layout) {
+			this.rows = rows;
+			this.names = names;
+			this.nextRow = nextRow;
+			this.layout = layout;
 		}
-		return list;
 	}
 
 	/**
-	 * Sets the game winner attribute within the active game element based on
-	 * the game winner.
+	 * Counts the games in a list.
 	 * 
+	 * @param pendingOnly
+	 *            - Whether only games pending completion are listed.
+	 * @return - The number of games listed.
 	 */
-	public void determineAndSetGameWinner() {
-		Element globalSettings = (Element) Link.doc.getElementsByTagName(
-				"globalSettings").item(0);
-		if (determineGameWinner() == 1) {
-			globalSettings.setAttribute("totalUserGameWins", String
-					.valueOf(Integer.parseInt(globalSettings
-							.getAttribute("totalUserGameWins")) + 1));
-			setAttributeOfActiveGameElement("gameWinner", "Player");
-		} else {
-			globalSettings.setAttribute("totalUserGameLoses", String
-					.valueOf(Integer.parseInt(globalSettings
-							.getAttribute("totalUserGameLoses")) + 1));
-			setAttributeOfActiveGameElement("gameWinner", "CPU");
-		}
+	public synchronized int countGames(boolean pendingOnly) {
+		return pendingOnly ? model.pendingCount() : model.count();
 	}
 
 	/**
-	 * Determines the game winner based on player round wins vs player round
-	 * losses
+	 * Reads a page of a list of games, in the order they were created. Only
+	 * the games on the page are formatted.
 	 * 
-	 * @return - The winner of the game in int form. (0:Tie Game;1:Player;
-	 *         2:CPU)
+	 * @param pendingOnly
+	 *            - Whether only games pending completion are listed.
+	 * @param row
+	 *            - The model row to start looking from: 0, or the nextRow of
+	 *            an earlier page.
+	 * @param skip
+	 *            - The number of listed games to pass over before the page.
+	 * @param count
+	 *            - The most games to read.
+	 * @return - The page, which is short if the list ends first.
 	 */
-	public int determineGameWinner() {
-		int playerRoundWins = Integer
-				.parseInt(getAttributeOfActiveGameElement("playerWins"));
-		int playerRoundLoses = Integer
-				.parseInt(getAttributeOfActiveGameElement("playerLoses"));
-		if (playerRoundWins > playerRoundLoses) {
-			return 1;
-		} else if (playerRoundWins < playerRoundLoses) {
-			return 2;
+	public synchronized GamePage readGames(boolean pendingOnly, int row,
+			int skip, int count) {
+		// Every row is listed when no game is pending deletion.
+		if (!pendingOnly && model.deletedCount() == 0) {
+			row += skip;
+			skip = 0;
+		}
+		String[] rows = new String[count];
+		int[] names = new int[count];
+		int found = 0;
+		for (; row < model.size() && found < count; row++) {
+			if (model.isDeleted(row)
+					|| (pendingOnly && model.getWinner(row) != GameModel.PENDING)) {
+				continue;
+			}
+			if (skip > 0) {
+				skip--;
+				continue;
+			}
+			names[found] = model.getName(row);
+			rows[found] = String.format("Game %d - %s Victory", names[found],
+					formatWinner(model.getWinner(row)));
+			found++;
 		}
-		return 0;
+		return new GamePage(Arrays.copyOf(rows, found), Arrays.copyOf(names,
+				found), row, model.getLayout());
 	}
 
 	/**
-	 * Gets an attribute of the active game element in use.
+	 * Finds games using the model's secondary indexes, so filtering costs a
+	 * few bitmap operations however many games are stored. Only the games
+	 * matched are ordered.
 	 * 
-	 * @param name
-	 *            - The name of the attribute to retrieve.
-	 * @return - The value of the attribute in string form. If nonexistent,
-	 *         returns null.
+	 * @param query
+	 *            - Which games to find and in what order.
+	 * @return - The names of the games found.
 	 */
-	public String getAttributeOfActiveGameElement(String name) {
-		if (getActiveGameElement() != null) {
-			return getActiveGameElement().getAttribute(name);
+	public synchronized int[] query(GameQuery query) {
+		GameIndex index = model.getIndex();
+		BitSet found = query.winners == 0 ? index.all() : index
+				.winners(query.winners);
+		if (query.bestOf != 0) {
+			found.and(index.bestOf(query.bestOf));
 		}
-		return null;
+		if (query.byStarted) {
+			found.and(index.started.rows(query.startedFrom, query.startedTo));
+		}
+		if (query.byEnded) {
+			found.and(index.ended.rows(query.endedFrom, query.endedTo));
+		}
+		int count = found.cardinality();
+		int[] rows = new int[count];
+		int next = 0;
+		for (int row = found.nextSetBit(0); row >= 0; row = found
+				.nextSetBit(row + 1)) {
+			rows[next++] = row;
+		}
+		int[] names = new int[Math.min(count, Math.max(0, query.limit))];
+		if (query.order == GameQuery.CREATED) {
+			for (int i = 0; i < names.length; i++) {
+				names[i] = model.getName(rows[query.descending ? count - 1 - i
+						: i]);
+			}
+			return names;
+		}
+
+		// Each key is replaced by its rank among the keys, which fits in 32
+		// bits, so the rank and the position of the game in created order pack
+		// into a long and a primitive sort leaves games with the same key in
+		// created order, whatever the row numbers.
+		long[] keys = new long[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = sortKey(query.order, query.descending, rows[i]);
+		}
+		long[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		for (int i = 0; i < count; i++) {
+			long rank = Arrays.binarySearch(sorted, keys[i]);
+			keys[i] = rank << 32 | i;
+		}
+		Arrays.sort(keys);
+		for (int i = 0; i < names.length; i++) {
+			names[i] = model.getName(rows[(int) keys[i]]);
+		}
+		return names;
 	}
 
 	/**
-	 * Sets an attribute of the active game element in use.
-	 * 
-	 * @param name
-	 *            - The name of the attribute to create or alter.
-	 * @param to
-	 *            - Value to set in string form.
+	 * @return - A key ordering a row by DURATION or MARGIN, negated when
+	 *         descending. A pending game has the largest key by DURATION, so
+	 *         it comes last either way.
 	 */
-	public void setAttributeOfActiveGameElement(String name, String to) {
-		if (getActiveGameElement() != null
-				&& getActiveGameElement().hasAttribute(name)) {
-			getActiveGameElement().setAttribute(name, to);
+	private long sortKey(int order, boolean descending, int row) {
+		long key;
+		if (order == GameQuery.MARGIN) {
+			key = model.getPlayerWins(row) - model.getPlayerLoses(row);
+		} else if (model.getEnded(row) == 0) {
+			return Long.MAX_VALUE;
+		} else {
+			key = model.getEnded(row) - model.getStarted(row);
 		}
+		return descending ? -key : key;
 	}
 
 	/**
-	 * Uses Link.activeGame to attempt identifying and will return a game
-	 * element tagged to that number if found.
+	 * Determines the game winner based on player round wins vs player round
+	 * losses
 	 * 
-	 * @return - If found, returns an Element. If the element cannot be found,
-	 *         it returns null.
+	 * @return - The winner of the game in int form. (0:Tie Game;1:Player;
+	 *         2:CPU)
 	 */
-	public Element getActiveGameElement() {
-		for (int ni = 0; ni < Link.doc.getDocumentElement()
-				.getElementsByTagName("game").getLength(); ni++) {
-			if (Link.activeGame.equals(Link.doc.getElementsByTagName("game")
-					.item(ni).getAttributes().getNamedItem("name")
-					.getTextContent())
-					|| Link.activeGame == Link.doc.getElementsByTagName("game")
-							.item(ni).getAttributes().getNamedItem("name")
-							.getTextContent()) {
-				return (Element) Link.doc.getElementsByTagName("game").item(ni);
-			}
+	public int determineGameWinner() {
+		return determineGameWinner(getActiveGame());
+	}
+
+	/**
+	 * Determines the winner of the game in a model row.
+	 */
+	private int determineGameWinner(int row) {
+		return RoundResolver.gameWinner(model.getPlayerWins(row),
+				model.getPlayerLoses(row));
+	}
+
+	/**
+	 * Uses Link.activeGame to find the active game in the model.
+	 * 
+	 * @return - The model row of the active game, or -1 if it cannot be found.
+	 */
+	public int getActiveGame() {
+		if (!Link.activeGame.equals(activeGameName)) {
+			activeGameRow = model.find(Integer.parseInt(Link.activeGame));
+			activeGameName = Link.activeGame;
 		}
-		return null;
+		return activeGameRow;
 	}
 
 	/**
-	 * Counts the number of elements in the saved XML document that are named
-	 * "game" and adds one to that number.
+	 * Chooses the number to name the next game with, in constant time. Names
+	 * are given in order and never given twice, unless "rps.reuseNames" is
+	 * "true", in which case the lowest name freed by deleting a game is given
+	 * first.
 	 * 
 	 * @return - A string representing the next available number to create an
 	 *         identifying tag for a game.
 	 */
-	public String getAvailableNumberToNameGame() {
-		String name = "0";
-		boolean repeat = true;
-		do {
-			name = String.valueOf(Integer.parseInt(name) + 1);
-			boolean found = false;
-			for (int ni = 0; ni < Link.doc.getDocumentElement()
-					.getElementsByTagName("game").getLength(); ni++) {
-				if (name.equals(Link.doc.getElementsByTagName("game").item(ni)
-						.getAttributes().getNamedItem("name").getTextContent())
-						|| name == Link.doc.getElementsByTagName("game")
-								.item(ni).getAttributes().getNamedItem("name")
-								.getTextContent()) {
-					found = true;
-					break;
-				}
-			}
-			if (found == false) {
-				repeat = false;
-			}
-		} while (repeat == true);
-		return name;
+	public synchronized String getAvailableNumberToNameGame() {
+		return String.valueOf(model.newName(reuseNames));
 	}
 
 	/**
@@ -333,18 +768,15 @@ public class XMLStore {
 	public String getScoreDisplay() {
 		String display = "";
 
-		Element activeGame = getActiveGameElement();
+		int activeGame = getActiveGame();
 
-		if (activeGame != null) {
+		if (activeGame >= 0) {
 
 			display = "Score - ";
 
-			int roundsWon = Integer.parseInt(activeGame
-					.getAttribute("playerWins"));
-			int roundsTied = Integer.parseInt(activeGame
-					.getAttribute("playerTies"));
-			int roundsLost = Integer.parseInt(activeGame
-					.getAttribute("playerLoses"));
+			int roundsWon = model.getPlayerWins(activeGame);
+			int roundsTied = model.getPlayerTies(activeGame);
+			int roundsLost = model.getPlayerLoses(activeGame);
 
 			display += roundsWon
 					+ (roundsWon > 1 || roundsWon < 1 ? " Rounds " : " Round")
@@ -359,129 +791,630 @@ public class XMLStore {
 	}
 
 	/**
-	 * Creates a new xml element and places it in the saved xml document. Also
-	 * sets the activeGame variable to the new element's ID number.
+	 * Creates a new game in the model. Also sets the activeGame variable to the
+	 * new game's ID number.
 	 */
-	public void makeNewGame() {
+	public synchronized void makeNewGame() {
 		Link.activeGame = getAvailableNumberToNameGame();
 
-		Element globalSettings = (Element) Link.doc.getElementsByTagName(
-				"globalSettings").item(0);
+		change(RoundJournal.CREATE, Integer.parseInt(Link.activeGame), 0,
+				model.bestOf);
+	}
+
+	/**
+	 * Formats a time for display. Times are kept and saved as milliseconds
+	 * since the epoch and only formatted here.
+	 * 
+	 * @param time
+	 *            - Milliseconds since the epoch, or 0 for a game still pending.
+	 * @return Ex: "Sun Sep 28 14:02:11 EDT 2014" or "Pending"
+	 */
+	public String formatTime(long time) {
+		return time == 0 ? "Pending" : new Date(time).toString();
+	}
+
+	/**
+	 * The format of Date.toString(), used to read the times in xml files saved
+	 * before times were saved as numbers. Only used while holding this
+	 * store's lock.
+	 */
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat(
+			"EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+
+	/**
+	 * Reads a time from xmlFile: milliseconds since the epoch, or in older
+	 * files the text of Date.toString() or "Pending". Text is read with
+	 * dateFormat, which applies the zone's rules for that instant; it is only
+	 * met once per game, as the file is saved with numbers after it is read.
+	 * 
+	 * @return - Milliseconds since the epoch, or 0 if the time is pending or
+	 *         cannot be read.
+	 */
+	private long parseTime(String time) {
+		if (time == null || time.equals("Pending")) {
+			return 0;
+		}
+		try {
+			if (!time.isEmpty() && Character.isDigit(time.charAt(0))) {
+				return Long.parseLong(time);
+			}
+			return dateFormat.parse(time).getTime();
+		} catch (ParseException e) {
+			return 0;
+		} catch (RuntimeException e) {
+			return 0;
+		}
+	}
 
-		globalSettings.setAttribute("totalUserGamesInitiated", String
-				.valueOf(Integer.parseInt(globalSettings
-						.getAttribute("totalUserGamesInitiated")) + 1));
+	/**
+	 * @return - "Pending", "Player" or "CPU" for a GameModel winner code.
+	 */
+	public String formatWinner(byte winner) {
+		return winner == GameModel.PLAYER ? "Player"
+				: winner == GameModel.CPU ? "CPU" : "Pending";
+	}
 
-		Element game = Link.doc.createElement("game");
-		game.setAttribute("name", getAvailableNumberToNameGame());
-		game.setAttribute("started", Link.time.toString());
-		game.setAttribute("ended", "Pending");
-		game.setAttribute("bestOf",
-				Link.doc.getElementsByTagName("globalSettings").item(0)
-						.getAttributes().getNamedItem("bestOf").getNodeValue());
-		game.setAttribute("currentRound", "1");
-		game.setAttribute("gameWinner", "Pending");
-		game.setAttribute("playerWins", "0");
-		game.setAttribute("playerLoses", "0");
-		game.setAttribute("playerTies", "0");
-		Link.doc.getDocumentElement().appendChild(game);
+	/**
+	 * Reads a number from an attribute, falling back to a default when the
+	 * attribute is missing or not a number.
+	 */
+	private long number(XMLStreamReader xml, String name, long fallback) {
+		String value = xml.getAttributeValue(null, name);
+		if (value == null) {
+			return fallback;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return fallback;
+		}
 	}
 
 	/**
-	 * When you ask to "create", the method creates a new XML document if it
-	 * does not already exist. Then it saves the document in the user working
-	 * directory. When you ask to "save", the method saves Link.doc to the XML
-	 * document in the application's working directory.
+	 * Replaces the model with the settings and games of an xml document. The
+	 * document is streamed in a single pass, so only the element being read is
+	 * held in memory.
 	 * 
-	 * @param w
-	 *            ("save", "create")
+	 * @param in
+	 *            - A document in the format written by exportXML().
+	 * @param total
+	 *            - Length of the document in bytes, used to report progress.
+	 * @param progress
+	 *            - Told how far loading has got every PROGRESS_GAMES games.
+	 *            May be null.
 	 */
-	public void Do(String w) {
+	void importXML(InputStream in, long total, LoadProgress progress)
+			throws XMLStreamException {
+		model.clear();
+		activeGameName = null;
 
-		if (w == "load") {
-			try {
-				if (xmlFile.exists()) {
-					DocumentBuilderFactory dbFactory = DocumentBuilderFactory
-							.newInstance();
-					DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-					Document doc = dBuilder.parse(xmlFile);
-					doc.getDocumentElement().normalize();
-					Link.doc = doc;
+		CountingInputStream counted = new CountingInputStream(in);
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				false);
+		XMLStreamReader xml = factory.createXMLStreamReader(counted);
+		try {
+			while (xml.hasNext()) {
+				if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+				String element = xml.getLocalName();
+				if (element.equals("game")) {
+					int row = model.add((int) number(xml, "name", 0),
+							parseTime(xml.getAttributeValue(null, "started")),
+							(int) number(xml, "bestOf", 3));
+					model.setCurrentRound(row,
+							(int) number(xml, "currentRound", 1));
+					model.setPlayerWins(row, (int) number(xml, "playerWins", 0));
+					model.setPlayerLoses(row,
+							(int) number(xml, "playerLoses", 0));
+					model.setPlayerTies(row, (int) number(xml, "playerTies", 0));
+					model.setEnded(row,
+							parseTime(xml.getAttributeValue(null, "ended")));
+					String winner = xml.getAttributeValue(null, "gameWinner");
+					model.setWinner(row, "Player".equals(winner) ? GameModel.PLAYER
+							: "CPU".equals(winner) ? GameModel.CPU
+									: GameModel.PENDING);
+					String rounds = xml.getAttributeValue(null, "rounds");
+					if (rounds != null) {
+						for (int round = 0; round < rounds.length(); round++) {
+							int packed = Math.max(0,
+									Character.digit(rounds.charAt(round), 16));
+							model.addRound(row, packed >> 2, packed);
+						}
+					}
+
+					if (progress != null && model.size() % PROGRESS_GAMES == 0) {
+						progress.update(counted.count, total, model.size(), false);
+					}
+				} else if (element.equals("globalSettings")) {
+					model.bestOf = (int) number(xml, "bestOf", 3);
+					model.totalUserGamesInitiated = number(xml,
+							"totalUserGamesInitiated", 0);
+					model.totalUserGameWins = number(xml, "totalUserGameWins", 0);
+					model.totalUserGameLoses = number(xml, "totalUserGameLoses",
+							0);
+					model.totalUserRoundWins = number(xml, "totalUserRoundWins",
+							0);
+					model.totalUserRoundLoses = number(xml,
+							"totalUserRoundLoses", 0);
+					model.totalUserRoundTies = number(xml, "totalUserRoundTies",
+							0);
+					model.journalSequence = number(xml, "journalSequence", 0);
+					model.nextGameName = Math.max(model.nextGameName,
+							(int) number(xml, "nextGameName", 1));
 				}
-			} catch (Exception e) {
-				e.printStackTrace();
 			}
+		} finally {
+			xml.close();
+		}
+	}
 
-		} else if (w == "create") {
-			try {
-				if (xmlFile.exists()) {
-					this.Do("load");
+	/**
+	 * Counts the bytes read from a stream, for reporting load progress.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		volatile long count = 0;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Writes a model as an xml document, one element per line.
+	 * 
+	 * @param snapshot
+	 *            - The model to write. It must not be changed while writing.
+	 * @param out
+	 *            - Stream to write the document to.
+	 */
+	void exportXML(GameModel snapshot, OutputStream out) throws XMLStreamException {
+		XMLStreamWriter xml = XMLOutputFactory.newInstance()
+				.createXMLStreamWriter(out, "UTF-8");
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.writeCharacters("\n");
+		xml.writeStartElement("Data");
+
+		xml.writeCharacters("\n    ");
+		xml.writeEmptyElement("globalSettings");
+		xml.writeAttribute("bestOf", String.valueOf(snapshot.bestOf));
+		xml.writeAttribute("journalSequence",
+				String.valueOf(snapshot.journalSequence));
+		xml.writeAttribute("nextGameName",
+				String.valueOf(snapshot.nextGameName));
+		xml.writeAttribute("totalUserGameLoses",
+				String.valueOf(snapshot.totalUserGameLoses));
+		xml.writeAttribute("totalUserGameWins",
+				String.valueOf(snapshot.totalUserGameWins));
+		xml.writeAttribute("totalUserGamesInitiated",
+				String.valueOf(snapshot.totalUserGamesInitiated));
+		xml.writeAttribute("totalUserRoundLoses",
+				String.valueOf(snapshot.totalUserRoundLoses));
+		xml.writeAttribute("totalUserRoundTies",
+				String.valueOf(snapshot.totalUserRoundTies));
+		xml.writeAttribute("totalUserRoundWins",
+				String.valueOf(snapshot.totalUserRoundWins));
+
+		// Rounds are written one hex digit each, as packed by GameModel.
+		char[] digits = new char[GameModel.ROUNDS_PER_WORD];
+		for (int game = 0; game < snapshot.size(); game++) {
+			if (snapshot.isDeleted(game)) {
+				continue;
+			}
+			xml.writeCharacters("\n    ");
+			xml.writeEmptyElement("game");
+			xml.writeAttribute("bestOf", String.valueOf(snapshot.getBestOf(game)));
+			xml.writeAttribute("currentRound",
+					String.valueOf(snapshot.getCurrentRound(game)));
+			xml.writeAttribute("ended", String.valueOf(snapshot.getEnded(game)));
+			xml.writeAttribute("gameWinner",
+					formatWinner(snapshot.getWinner(game)));
+			xml.writeAttribute("name", String.valueOf(snapshot.getName(game)));
+			xml.writeAttribute("playerLoses",
+					String.valueOf(snapshot.getPlayerLoses(game)));
+			xml.writeAttribute("playerTies",
+					String.valueOf(snapshot.getPlayerTies(game)));
+			xml.writeAttribute("playerWins",
+					String.valueOf(snapshot.getPlayerWins(game)));
+			int count = snapshot.getRoundCount(game);
+			if (count > 0) {
+				if (digits.length < count) {
+					digits = new char[Math.max(count, digits.length * 2)];
+				}
+				for (int round = 0; round < count; round++) {
+					digits[round] = Character.forDigit(
+							snapshot.getRound(game, round), 16);
+				}
+				xml.writeAttribute("rounds", new String(digits, 0, count));
+			}
+			xml.writeAttribute("started",
+					String.valueOf(snapshot.getStarted(game)));
+		}
+
+		xml.writeCharacters("\n");
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+		xml.writeEndDocument();
+		xml.close();
+	}
+
+	/**
+	 * Takes a snapshot of the model and writes it to xmlFile. Only copying the
+	 * model holds this store's lock; the document is written to a temporary
+	 * file that then replaces xmlFile in one step, so xmlFile always holds a
+	 * complete save. Called by the write-behind saver on its own thread; use
+	 * Do("save") or markDirty() instead of calling this directly.
+	 * 
+	 * @return - The number of bytes written, or -1 if the write failed.
+	 */
+	long write() {
+		if (binary) {
+			return writeBinary();
+		}
+
+		GameModel snapshot;
+		NGramPredictor learned;
+		long sequence;
+		synchronized (this) {
+			sequence = journal.getSequence();
+			model.journalSequence = sequence;
+			snapshot = model.copy();
+			model.clearChanges();
+			learned = takePredictor();
+		}
+
+		try {
+			writeXML(snapshot, xmlFile);
+			writePredictor(learned);
+			journal.compact(sequence);
+			return xmlFile.length();
+		} catch (Exception e) {
+			predictorNotSaved(learned);
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes the games changed since the last save into gameFile. Only copying
+	 * the changed games into the mapped file holds this store's lock. When
+	 * games have moved, a snapshot of the model is taken and every game is
+	 * rewritten instead.
+	 * 
+	 * @return - The number of bytes written, or -1 if the write failed.
+	 */
+	private long writeBinary() {
+		GameModel snapshot = null;
+		NGramPredictor learned = null;
+		byte[] header = null;
+		long sequence;
+		long bytes = 0;
+		try {
+			synchronized (this) {
+				sequence = journal.getSequence();
+				model.journalSequence = sequence;
+				bytes = gameFile.writeRounds(model, model.getChanges());
+				if (rewriteAll || model.hasMoved() || !gameFile.isOpen()) {
+					snapshot = model.copy();
 				} else {
+					bytes += gameFile.writeRecords(model, model.getChanges());
+					header = gameFile.header(model);
+				}
+				model.clearChanges();
+				learned = takePredictor();
+				// Until this save succeeds the changes it held are only known
+				// to be in the model.
+				rewriteAll = true;
+			}
 
-					DocumentBuilderFactory docFactory = DocumentBuilderFactory
-							.newInstance();
-					DocumentBuilder docBuilder = docFactory
-							.newDocumentBuilder();
-
-					// root elements
-					Document doc = docBuilder.newDocument();
-
-					Element rootElement = doc.createElement("Data");
-					doc.appendChild(rootElement);
-
-					Element globalSettings = doc
-							.createElement("globalSettings");
-					globalSettings.setAttribute("bestOf", "3");
-					globalSettings.setAttribute("totalUserGamesInitiated", "0");
-					globalSettings.setAttribute("totalUserGameWins", "0");
-					globalSettings.setAttribute("totalUserGameLoses", "0");
-					globalSettings.setAttribute("totalUserRoundWins", "0");
-					globalSettings.setAttribute("totalUserRoundLoses", "0");
-					globalSettings.setAttribute("totalUserRoundTies", "0");
-					doc.getDocumentElement().appendChild(globalSettings);
-
-					Link.doc = doc;
-					OutputFormat format = new OutputFormat(Link.doc);
-					format.setIndenting(true);
-
-					XMLSerializer serializer;
-					serializer = new XMLSerializer(new FileOutputStream(
-							new File(System.getProperty("user.dir")
-									+ "\\RPS_Data.xml")), format);
-					serializer.serialize(Link.doc);
-
-					docFactory = null;
-					docBuilder = null;
-					rootElement = null;
-					doc = null;
-					format = null;
-					serializer = null;
+			if (snapshot != null) {
+				bytes += gameFile.rewrite(snapshot);
+			} else {
+				bytes += gameFile.commit(header);
+			}
+
+			synchronized (this) {
+				rewriteAll = false;
+			}
+			writePredictor(learned);
+			journal.compact(sequence);
+			return bytes;
+		} catch (Exception e) {
+			predictorNotSaved(learned);
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	/**
+	 * @return - A copy of the predictor to save, or null if it has not changed
+	 *         since the last save. Call holding this store's lock.
+	 */
+	private NGramPredictor takePredictor() {
+		if (!predictorChanged) {
+			return null;
+		}
+		predictorChanged = false;
+		return predictor.copy();
+	}
+
+	/**
+	 * Writes a predictor to predictorFile through a temporary file. A failed
+	 * write is only reported, as the predictor is learned again from the saved
+	 * rounds when predictorFile cannot be read.
+	 * 
+	 * @param predictor
+	 *            - The copy to save, or null to save nothing.
+	 */
+	private void writePredictor(NGramPredictor predictor) {
+		if (predictor == null) {
+			return;
+		}
+		try {
+			predictor.save(predictorFile);
+		} catch (IOException e) {
+			predictorNotSaved(predictor);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Marks the predictor as changed again after a save that took it failed,
+	 * so the next save writes it.
+	 * 
+	 * @param predictor
+	 *            - The copy that was taken, or null if none was.
+	 */
+	private synchronized void predictorNotSaved(NGramPredictor predictor) {
+		if (predictor != null) {
+			predictorChanged = true;
+		}
+	}
+
+	/**
+	 * Reads predictorFile, which Trainer may have written, or learns
+	 * the predictor from every saved round if it cannot be read. Call holding
+	 * this store's lock, after the games are loaded and before the journal is
+	 * replayed.
+	 */
+	private void loadPredictor() {
+		if (predictorFile.exists()) {
+			try {
+				FileChannel channel = FileChannel.open(predictorFile.toPath(),
+						StandardOpenOption.READ);
+				try {
+					// Read into the heap rather than mapped, as a mapping would
+					// keep the file from being replaced when the predictor is
+					// saved on some systems.
+					ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(
+							channel.size(), NGramPredictor.size()));
+					while (buffer.hasRemaining()) {
+						if (channel.read(buffer) < 0) {
+							break;
+						}
+					}
+					buffer.flip();
+					NGramPredictor read = NGramPredictor.read(buffer);
+					if (read != null) {
+						predictor = read;
+						return;
+					}
+				} finally {
+					channel.close();
 				}
-			} catch (Exception e) {
+			} catch (IOException e) {
 				e.printStackTrace();
 			}
-		} else if (w == "save" && Link.doc != null) {
+		}
 
-			OutputFormat format = new OutputFormat(Link.doc);
-			format.setIndenting(true);
+		predictor.reset();
+		long learned = model.journalSequence;
+		GameModel.RoundVisitor visitor = new GameModel.RoundVisitor() {
+			public void round(int round, int playerThrow, int cpuThrow) {
+				// Rounds saved by an older version may hold no throws.
+				if (playerThrow != 0 && cpuThrow != 0) {
+					predictor.observe(cpuThrow, playerThrow);
+				}
+			}
+		};
+		for (int row = 0; row < model.size(); row++) {
+			if (model.isDeleted(row)) {
+				continue;
+			}
+			model.forEachRound(row, visitor);
+			learned = Math.max(learned, model.getSequence(row));
+		}
+		predictor.setSequence(learned);
+		predictorChanged = model.size() > 0;
+	}
 
-			XMLSerializer serializer;
+	/**
+	 * Writes a model to an xml file through a temporary file that then
+	 * replaces it in one step.
+	 */
+	private void writeXML(GameModel snapshot, File xml) throws IOException,
+			XMLStreamException {
+		File tmp = new File(xml.getPath() + ".tmp");
+		FileOutputStream file = new FileOutputStream(tmp);
+		try {
+			OutputStream out = new BufferedOutputStream(file, 64 * 1024);
+			exportXML(snapshot, out);
+			out.flush();
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+
+		replace(tmp, xml);
+	}
+
+	/**
+	 * Replaces a file with a temporary file in one step where the file system
+	 * allows it.
+	 */
+	static void replace(File tmp, File target) throws IOException {
+		try {
+			Files.move(tmp.toPath(), target.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), target.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
 
+	/**
+	 * Writes every game to an xml file, whichever format the data is saved in.
+	 * 
+	 * @param xml
+	 *            - The file to write.
+	 */
+	public void exportTo(File xml) throws IOException, XMLStreamException {
+		GameModel snapshot;
+		synchronized (this) {
+			model.journalSequence = journal.getSequence();
+			snapshot = model.copy();
+		}
+		writeXML(snapshot, xml);
+	}
+
+	/**
+	 * Replaces every game with the games in an xml file, and saves them in
+	 * whichever format the data is saved in.
+	 * 
+	 * @param xml
+	 *            - A file written by exportTo(), or an "RPS_Data.xml".
+	 */
+	public void importFrom(File xml) throws IOException, XMLStreamException {
+		InputStream in = new BufferedInputStream(new FileInputStream(xml),
+				64 * 1024);
+		try {
+			synchronized (this) {
+				importXML(in, xml.length(), null);
+				// The journal holds changes to the games being replaced.
+				model.journalSequence = journal.getSequence();
+				model.collectFreeNames();
+				rewriteAll = true;
+				statistics = null;
+			}
+		} finally {
+			in.close();
+		}
+		markDirty();
+	}
+
+	/**
+	 * Loads the saved data, or starts new default settings if there is none,
+	 * then replays the journal over it.
+	 * 
+	 * @param progress
+	 *            - Told how far loading has got, and when it is done. May be
+	 *            null.
+	 */
+	public void create(LoadProgress progress) {
+		if (xmlFile.exists() || (binary && gameFile.exists())) {
+			load(progress);
+		} else {
+			synchronized (this) {
+				model.clear();
+			}
+			markDirty();
+		}
+		synchronized (this) {
+			loadPredictor();
+			replayJournal();
+			model.collectFreeNames();
+			statistics = null;
+		}
+		if (progress != null) {
+			progress.update(1, 1, model.size(), true);
+		}
+	}
+
+	/**
+	 * Replaces the model with the contents of xmlFile, or of gameFile when
+	 * saving in binary. An xml file is imported into gameFile the first time
+	 * the binary format is used.
+	 * 
+	 * @param progress
+	 *            - Told how far loading has got. May be null.
+	 */
+	public void load(LoadProgress progress) {
+		if (binary && gameFile.exists()) {
 			try {
-				serializer = new XMLSerializer(new FileOutputStream(new File(
-						System.getProperty("user.dir") + "\\RPS_Data.xml")),
-						format);
-				serializer.serialize(Link.doc);
-				serializer = null;
-			} catch (Exception e) {
+				synchronized (this) {
+					gameFile.load(model, progress);
+					activeGameName = null;
+					statistics = null;
+					rewriteAll = false;
+				}
+			} catch (IOException e) {
 				e.printStackTrace();
 			}
-			format = null;
+			return;
+		}
+		if (!xmlFile.exists()) {
+			return;
+		}
+		if (binary) {
+			markDirty();
+		}
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(
+					xmlFile), 64 * 1024);
+			try {
+				synchronized (this) {
+					importXML(in, xmlFile.length(), progress);
+					statistics = null;
+				}
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
 
+	/**
+	 * When you ask to "create", the method loads the XML document if it exists
+	 * or starts new default settings otherwise, and queues them to be saved in
+	 * the user working directory. When you ask to "save", the method writes the
+	 * model to the XML document in the application's working directory if it
+	 * has changed since the last save.
+	 * 
+	 * @param w
+	 *            ("save", "create", "load")
+	 */
+	public void Do(String w) {
+
+		if (w == "load") {
+			load(null);
+		} else if (w == "create") {
+			create(null);
+		} else if (w == "save") {
+			writeBehind.flush();
 		}
 		try {
 			finalize();
 		} catch (Throwable e) {
 		}
 	}
-}
\ No newline at end of file
+}